@@ -0,0 +1,62 @@
+/*******************************************************************
+ * @file AlignmentTransform.java
+ *
+ * @brief Scale and shift that place the thermal image on top of the rgb image
+ ********************************************************************/
+package com.samples.flironecamera;
+
+/**
+ * The thermal image is scaled to {@code scale} times the size of the rgb image and then shifted by
+ * ({@code offsetX}, {@code offsetY}) pixels, the same as the resize + warpAffine in "Extract + Adjust Orientation.py".
+ * Immutable so it can be used as a cache key.
+ */
+final class AlignmentTransform {
+
+    // Values measured for the FLIR ONE, see splitThermalRGB() in "Extract + Adjust Orientation.py"
+    static final AlignmentTransform PORTRAIT = new AlignmentTransform(0.81, 120, 185);
+    static final AlignmentTransform LANDSCAPE = new AlignmentTransform(0.81, 180, 85);
+
+    final double scale;
+    final double offsetX;
+    final double offsetY;
+
+    AlignmentTransform(double scale, double offsetX, double offsetY) {
+        this.scale = scale;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    /**
+     * The transform the python script uses for an rgb image with this many rows
+     */
+    static AlignmentTransform forRgbRows(int rows) {
+        return rows == 1080 ? LANDSCAPE : PORTRAIT;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AlignmentTransform)) {
+            return false;
+        }
+        AlignmentTransform other = (AlignmentTransform) o;
+        return Double.compare(scale, other.scale) == 0
+                && Double.compare(offsetX, other.offsetX) == 0
+                && Double.compare(offsetY, other.offsetY) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(scale);
+        bits = 31 * bits + Double.doubleToLongBits(offsetX);
+        bits = 31 * bits + Double.doubleToLongBits(offsetY);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "scale=" + scale + " offset=(" + offsetX + ", " + offsetY + ")";
+    }
+}
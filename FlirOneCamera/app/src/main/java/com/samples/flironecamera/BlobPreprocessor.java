@@ -0,0 +1,139 @@
+/*******************************************************************
+ * @file BlobPreprocessor.java
+ *
+ * @brief Turns a frame into the yolo input blob without allocating per frame
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+/**
+ * Owns the Nx3xHxW float blob of a network and the scratch buffers to fill it: the resized image and the Java arrays
+ * for the conversion from interleaved bytes to scaled float planes. {@code Dnn.blobFromImage} allocates a new blob
+ * (2MB for 416x416) and a resized copy of the frame on every call, here they are allocated when the input size
+ * changes and reused for every frame after that, so the steady state allocates nothing, see
+ * {@code BlobAllocationBenchmark} in the benchmarks module.
+ * <p/>
+ * The result is the same as {@code Dnn.blobFromImage(image, scale, new Size(width, height), new Scalar(0, 0, 0), false, false)},
+ * or {@code Dnn.blobFromImages} with one image per tile for a batch of tiles.
+ * The blob is overwritten by the next frame, so it must be handed to {@code Net.setInput} and the net run before that.
+ * Must only be used by one thread at a time.
+ */
+class BlobPreprocessor {
+
+    private final float scale;
+    private final Size size = new Size();
+    private final int[] position = {0, 0, 0, 0};   // Where the next image goes in the blob, the first index is the image
+    private int batch = 0;
+    private Mat resized = null;
+    private Mat blob = null;
+    private byte[] pixels = new byte[0];
+    private float[] planes = new float[0];
+
+    /**
+     * @param scale multiplier of the pixel values, e.g. 1/255
+     */
+    BlobPreprocessor(float scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Resize an 8 bit, 3 channel image to the network input and write it into the blob
+     *
+     * @return the blob, owned by this preprocessor
+     */
+    Mat prepare(Mat image, int width, int height) {
+        ensureSize(width, height, 1);
+        if (image.cols() == width && image.rows() == height && image.isContinuous()) {
+            write(image, 0);
+        } else {
+            Imgproc.resize(image, resized, size);
+            write(resized, 0);
+        }
+        return blob;
+    }
+
+    /**
+     * Resize every tile of an 8 bit, 3 channel image to the network input and write them into one blob, in the
+     * order of the list
+     *
+     * @return the blob with one image per tile, owned by this preprocessor
+     */
+    Mat prepare(Mat image, List<Rect> tiles, int width, int height) {
+        ensureSize(width, height, tiles.size());
+        for (int i = 0; i < tiles.size(); i++) {
+            Mat tile = image.submat(tiles.get(i));
+            Imgproc.resize(tile, resized, size);
+            tile.release();
+            write(resized, i);
+        }
+        return blob;
+    }
+
+    /**
+     * Free the blob and the scratch buffers, they are allocated again by the next {@link #prepare(Mat, int, int)}
+     */
+    void release() {
+        if (blob != null) {
+            blob.release();
+            resized.release();
+            blob = null;
+            resized = null;
+            batch = 0;
+        }
+        pixels = new byte[0];
+        planes = new float[0];
+    }
+
+    /**
+     * A new 1x3xHxW float blob for images of the given size
+     */
+    static Mat createBlob(int rows, int cols) {
+        return createBlob(1, rows, cols);
+    }
+
+    /**
+     * A new Nx3xHxW float blob for a batch of images of the given size
+     */
+    static Mat createBlob(int images, int rows, int cols) {
+        return new Mat(new int[]{images, 3, rows, cols}, CvType.CV_32F);
+    }
+
+    private void ensureSize(int width, int height, int images) {
+        if (blob != null && (int) size.width == width && (int) size.height == height && batch == images) {
+            return;
+        }
+        release();
+        size.width = width;
+        size.height = height;
+        batch = images;
+        resized = new Mat(height, width, CvType.CV_8UC3);
+        blob = createBlob(images, height, width);
+        pixels = new byte[width * height * 3];
+        planes = new float[width * height * 3];
+    }
+
+    /**
+     * Interleaved R, G, B bytes to three scaled float planes of one image of the blob
+     */
+    private void write(Mat image, int index) {
+        int area = pixels.length / 3;
+        image.get(0, 0, pixels);
+        byte[] in = pixels;
+        float[] out = planes;
+        float scale = this.scale;
+        for (int p = 0, i = 0; p < area; p++, i += 3) {
+            out[p] = (in[i] & 0xFF) * scale;
+            out[area + p] = (in[i + 1] & 0xFF) * scale;
+            out[2 * area + p] = (in[i + 2] & 0xFF) * scale;
+        }
+        position[0] = index;
+        blob.put(position, out);
+    }
+}
@@ -0,0 +1,318 @@
+/*******************************************************************
+ * @file BoxTracker.java
+ *
+ * @brief Moves the detected boxes along between two yolo runs
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.KalmanFilter;
+import org.opencv.video.Video;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps one track per kept detection, each with an id that stays the same as long as the device is seen. On key
+ * frames each detection, most confident first, continues the free track of the same class it overlaps most, the
+ * other detections start new tracks and the tracks that weren't continued end. On the frames in between every box is moved by the median
+ * sparse optical flow of the corners inside it, and a constant velocity {@link KalmanFilter} per track smooths
+ * the movement and carries a box for a frame where the flow failed.
+ * <p/>
+ * The flow runs on a gray, half size copy of the camera image. A box whose corners couldn't be followed is a lost
+ * box, {@link #propagate(Mat, FrameContext)} returns false then so a key frame can be requested. Without any track
+ * there is nothing to lose, the next key frame comes from the {@link DetectionScheduler} interval.
+ * <p/>
+ * The Java {@code KalmanFilter} has no release, its native object is only freed by the finalizer, so the filters of
+ * ended tracks are kept and reinitialized for new tracks instead of creating one per track. The Mats returned by
+ * {@code predict()}, {@code correct()} and {@code get_statePost()} are released right away.
+ * <p/>
+ * Must only be used by one thread, the frames have to be given in order.
+ */
+class BoxTracker {
+
+    private static final double SCALE = 0.5;            // Size of the flow images relative to the camera image
+    private static final int MAX_CORNERS = 20;          // Per box
+    private static final int MIN_CORNERS = 4;           // A box with fewer followed corners is lost
+    private static final double MIN_IOU = 0.3;          // For a detection to continue a track
+
+    private static final class Track {
+        final int id;
+        final int classId;      // Before the on/off classification
+        float confidence;
+        double centerX;
+        double centerY;
+        double width;
+        double height;
+        final KalmanFilter filter;  // x, y, vx, vy, measures x, y
+
+        Track(int id, int classId, KalmanFilter filter) {
+            this.id = id;
+            this.classId = classId;
+            this.filter = filter;
+        }
+
+        Rect box(int frameCols, int frameRows) {
+            int x = (int) Math.max(0, Math.round(centerX - width / 2));
+            int y = (int) Math.max(0, Math.round(centerY - height / 2));
+            int right = (int) Math.min(frameCols, Math.round(centerX + width / 2));
+            int bottom = (int) Math.min(frameRows, Math.round(centerY + height / 2));
+            return new Rect(x, y, Math.max(1, right - x), Math.max(1, bottom - y));
+        }
+    }
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final List<KalmanFilter> spareFilters = new ArrayList<>();     // Of ended tracks, reused by new ones
+    private int nextId = 0;
+    private Mat previousGray = new Mat();
+    private Mat gray = new Mat();
+    private final Mat resized = new Mat();
+    private final Mat measurement = new Mat(2, 1, CvType.CV_32F);
+    private final MatOfPoint corners = new MatOfPoint();
+    private final MatOfPoint2f previousPoints = new MatOfPoint2f();
+    private final MatOfPoint2f nextPoints = new MatOfPoint2f();
+    private final MatOfByte status = new MatOfByte();
+    private final MatOfFloat error = new MatOfFloat();
+
+    /**
+     * Start, continue or end the tracks with the kept detections of a key frame
+     *
+     * @param rgb   the camera image of the frame
+     * @param frame its detections, {@code trackIds} is set to the track of each kept box
+     */
+    void update(Mat rgb, FrameContext frame) {
+        toGray(rgb);
+        int[] kept = frame.keptIndices;
+        int[] ids = new int[kept.length];
+        boolean[] matched = new boolean[tracks.size()];
+        List<Track> updated = new ArrayList<>(kept.length);
+        for (int i = 0; i < kept.length; i++) {
+            Rect box = frame.detections.rect(kept[i]);
+            int classId = frame.detections.classId(kept[i]);
+            int best = -1;
+            double bestOverlap = MIN_IOU;
+            for (int t = 0; t < tracks.size(); t++) {
+                Track track = tracks.get(t);
+                double overlap = NonMaxSuppression.overlap(box, track.box(Integer.MAX_VALUE, Integer.MAX_VALUE));
+                if (!matched[t] && track.classId == classId && overlap >= bestOverlap) {
+                    best = t;
+                    bestOverlap = overlap;
+                }
+            }
+            Track track;
+            if (best >= 0) {
+                matched[best] = true;
+                track = tracks.get(best);
+                predict(track);
+                correct(track, box.x + box.width / 2.0, box.y + box.height / 2.0);
+                track.centerX = box.x + box.width / 2.0;     // The filter learns the velocity, the box is shown where yolo found it
+                track.centerY = box.y + box.height / 2.0;
+            } else {
+                track = start(classId, box);
+            }
+            track.confidence = frame.detections.score(kept[i]);
+            track.width = box.width;
+            track.height = box.height;
+            ids[i] = track.id;
+            updated.add(track);
+        }
+        for (int t = 0; t < matched.length; t++) {
+            if (!matched[t]) {
+                spareFilters.add(tracks.get(t).filter);     // The track ended
+            }
+        }
+        tracks.clear();
+        tracks.addAll(updated);
+        frame.trackIds = ids;
+    }
+
+    /**
+     * Move the tracks to a frame that wasn't detected and write them into its boxes, as if yolo had found them
+     *
+     * @return false if a box was lost and a key frame should follow, true if all boxes were followed or there
+     * are none
+     */
+    boolean propagate(Mat rgb, FrameContext frame) {
+        toGray(rgb);
+        int frameCols = rgb.cols();
+        int frameRows = rgb.rows();
+        int[] owners = collectCorners(frameCols, frameRows);
+        int[] followed = new int[tracks.size()];
+        float[] shiftsX = new float[owners.length];
+        float[] shiftsY = new float[owners.length];
+        if (owners.length > 0) {
+            Video.calcOpticalFlowPyrLK(previousGray, gray, previousPoints, nextPoints, status, error);
+            Point[] from = previousPoints.toArray();
+            Point[] to = nextPoints.toArray();
+            byte[] found = status.toArray();
+            for (int p = 0; p < owners.length; p++) {
+                shiftsX[p] = Float.NaN;
+                shiftsY[p] = Float.NaN;
+                if (found[p] != 0) {
+                    int t = owners[p];
+                    shiftsX[p] = (float) ((to[p].x - from[p].x) / SCALE);
+                    shiftsY[p] = (float) ((to[p].y - from[p].y) / SCALE);
+                    followed[t]++;
+                }
+            }
+        }
+
+        boolean confident = true;   // An empty scene waits for the scheduler's key frame instead of detecting every frame
+        frame.detections.clear();
+        frame.keptIndices = new int[tracks.size()];
+        frame.trackIds = new int[tracks.size()];
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            predict(track);
+            if (followed[t] >= MIN_CORNERS) {
+                correct(track, track.centerX + median(shiftsX, owners, t, followed[t]), track.centerY + median(shiftsY, owners, t, followed[t]));
+            } else {    // Keep going with the predicted velocity until the next key frame, predict() wrote it to statePost
+                float[] state = new float[4];
+                Mat statePost = track.filter.get_statePost();
+                statePost.get(0, 0, state);
+                statePost.release();
+                track.centerX = state[0];
+                track.centerY = state[1];
+                confident = false;
+            }
+            frame.detections.add(track.box(frameCols, frameRows), track.confidence, track.classId);
+            frame.keptIndices[t] = t;
+            frame.trackIds[t] = track.id;
+        }
+        return confident;
+    }
+
+    /**
+     * End all tracks, the next frame has to be a key frame
+     */
+    void reset() {
+        for (Track track : tracks) {
+            spareFilters.add(track.filter);
+        }
+        tracks.clear();
+        previousGray.release();
+        gray.release();
+    }
+
+    int size() {
+        return tracks.size();
+    }
+
+    private Track start(int classId, Rect box) {
+        KalmanFilter filter = spareFilters.isEmpty() ? new KalmanFilter(4, 2, 0, CvType.CV_32F) : spareFilters.remove(spareFilters.size() - 1);
+        Track track = new Track(nextId++, classId, filter);     // Every matrix of a reused filter is set again below
+        Mat transition = Mat.eye(4, 4, CvType.CV_32F);
+        transition.put(0, 2, 1);
+        transition.put(1, 3, 1);
+        track.filter.set_transitionMatrix(transition);
+        Mat measurementMatrix = Mat.zeros(2, 4, CvType.CV_32F);
+        measurementMatrix.put(0, 0, 1);
+        measurementMatrix.put(1, 1, 1);
+        track.filter.set_measurementMatrix(measurementMatrix);
+        track.filter.set_processNoiseCov(identity(4, 1e-2));
+        track.filter.set_measurementNoiseCov(identity(2, 1e-1));
+        track.filter.set_errorCovPost(identity(4, 1));
+        track.centerX = box.x + box.width / 2.0;
+        track.centerY = box.y + box.height / 2.0;
+        Mat state = new Mat(4, 1, CvType.CV_32F);
+        state.put(0, 0, track.centerX, track.centerY, 0, 0);
+        track.filter.set_statePost(state);
+        transition.release();
+        measurementMatrix.release();
+        state.release();
+        return track;
+    }
+
+    private static void predict(Track track) {
+        track.filter.predict().release();
+    }
+
+    private void correct(Track track, double x, double y) {
+        measurement.put(0, 0, x, y);
+        float[] state = new float[4];
+        Mat corrected = track.filter.correct(measurement);
+        corrected.get(0, 0, state);
+        corrected.release();
+        track.centerX = state[0];
+        track.centerY = state[1];
+    }
+
+    /**
+     * Find the corners inside every box of the previous frame
+     *
+     * @return the track of each corner, the corners are in {@link #previousPoints}
+     */
+    private int[] collectCorners(int frameCols, int frameRows) {
+        List<Point> points = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        if (previousGray.empty()) {
+            return new int[0];
+        }
+        for (int t = 0; t < tracks.size(); t++) {
+            Rect box = tracks.get(t).box(frameCols, frameRows);
+            Rect scaled = new Rect((int) (box.x * SCALE), (int) (box.y * SCALE), (int) (box.width * SCALE), (int) (box.height * SCALE));
+            scaled.width = Math.min(scaled.width, previousGray.cols() - scaled.x);
+            scaled.height = Math.min(scaled.height, previousGray.rows() - scaled.y);
+            if (scaled.width < 8 || scaled.height < 8) {
+                continue;
+            }
+            Mat region = previousGray.submat(scaled);
+            Imgproc.goodFeaturesToTrack(region, corners, MAX_CORNERS, 0.01, 3);
+            region.release();
+            for (Point corner : corners.toArray()) {
+                points.add(new Point(corner.x + scaled.x, corner.y + scaled.y));
+                owners.add(t);
+            }
+        }
+        previousPoints.fromList(points);
+        int[] result = new int[owners.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = owners.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Median of the followed shifts of one track, the corners that were lost have no shift (NaN)
+     */
+    private static float median(float[] shifts, int[] owners, int track, int count) {
+        float[] own = new float[count];
+        int n = 0;
+        for (int p = 0; p < owners.length && n < count; p++) {
+            if (owners[p] == track && !Float.isNaN(shifts[p])) {
+                own[n++] = shifts[p];
+            }
+        }
+        Arrays.sort(own);
+        return own[count / 2];
+    }
+
+    /**
+     * The gray, scaled camera image of the current frame, the last one becomes the previous frame
+     */
+    private void toGray(Mat rgb) {
+        Mat swap = previousGray;
+        previousGray = gray;
+        gray = swap;
+        Imgproc.resize(rgb, resized, new Size(), SCALE, SCALE, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(resized, gray, Imgproc.COLOR_RGB2GRAY);
+    }
+
+    private static Mat identity(int size, double value) {
+        Mat mat = new Mat(size, size, CvType.CV_32F);
+        Core.setIdentity(mat, new Scalar(value));
+        return mat;
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************
+ * @file CalibrationProfiles.java
+ *
+ * @brief Thermal to rgb alignment profiles per camera and resolution
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one {@link AlignmentTransform} per camera (the {@code deviceId} of its {@link com.flir.thermalsdk.live.Identity})
+ * and rgb resolution, so more than one FLIR unit can be supported by editing a file instead of rebuilding the app.
+ * <p/>
+ * The file has one profile per line: {@code deviceId, rgbRows, rgbCols, scale, offsetX, offsetY}.
+ * {@code *} matches any value, lines starting with {@code #} are comments and the first matching line wins.
+ * The result of a lookup is cached so the pipeline gets the same transform object, and with it the same cached
+ * remap table in {@link ThermalRegistration}, for every frame.
+ */
+class CalibrationProfiles {
+
+    static final String FILE_NAME = "calibration.cfg";
+    private static final String ANY = "*";
+
+    private static final class Profile {
+        final String deviceId;
+        final int rows;     // -1 matches any value
+        final int cols;
+        final AlignmentTransform transform;
+
+        Profile(String deviceId, int rows, int cols, AlignmentTransform transform) {
+            this.deviceId = deviceId;
+            this.rows = rows;
+            this.cols = cols;
+            this.transform = transform;
+        }
+
+        boolean matches(String deviceId, int rows, int cols) {
+            return (ANY.equals(this.deviceId) || this.deviceId.equals(deviceId))
+                    && (this.rows == -1 || this.rows == rows)
+                    && (this.cols == -1 || this.cols == cols);
+        }
+    }
+
+    private final List<Profile> profiles;
+    private final Map<String, AlignmentTransform> resolved = new ConcurrentHashMap<>();
+
+    private CalibrationProfiles(List<Profile> profiles) {
+        this.profiles = profiles;
+    }
+
+    /**
+     * Profiles that only contain the values from the python script, used when no file could be read
+     */
+    static CalibrationProfiles defaults() {
+        return new CalibrationProfiles(new ArrayList<>());
+    }
+
+    /**
+     * Parse a profile file, the stream is closed afterwards
+     *
+     * @throws IOException if the stream can't be read or a line is malformed
+     */
+    static CalibrationProfiles load(InputStream inputStream) throws IOException {
+        List<Profile> profiles = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s*,\\s*");
+                if (parts.length != 6) {
+                    throw new IOException("Line " + lineNumber + " of " + FILE_NAME + " should have 6 values but has " + parts.length);
+                }
+                try {
+                    AlignmentTransform transform = new AlignmentTransform(Double.parseDouble(parts[3]), Double.parseDouble(parts[4]), Double.parseDouble(parts[5]));
+                    profiles.add(new Profile(parts[0], parseDimension(parts[1]), parseDimension(parts[2]), transform));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + " of " + FILE_NAME + " has an invalid number: " + e.getMessage());
+                }
+            }
+        }
+        return new CalibrationProfiles(profiles);
+    }
+
+    /**
+     * The transform for a camera and rgb resolution, falls back to {@link AlignmentTransform#forRgbRows(int)}
+     *
+     * @param deviceId the camera, may be null when it isn't known
+     */
+    AlignmentTransform get(String deviceId, int rgbRows, int rgbCols) {
+        String key = deviceId + "|" + rgbRows + "x" + rgbCols;
+        AlignmentTransform transform = resolved.get(key);
+        if (transform == null) {
+            transform = find(deviceId, rgbRows, rgbCols);
+            resolved.put(key, transform);
+        }
+        return transform;
+    }
+
+    int size() {
+        return profiles.size();
+    }
+
+    private AlignmentTransform find(String deviceId, int rgbRows, int rgbCols) {
+        for (Profile profile : profiles) {
+            if (profile.matches(deviceId, rgbRows, rgbCols)) {
+                return profile.transform;
+            }
+        }
+        return AlignmentTransform.forRgbRows(rgbRows);
+    }
+
+    private static int parseDimension(String value) {
+        return ANY.equals(value) ? -1 : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,277 @@
+/*******************************************************************
+ * @file DetectionModels.java
+ *
+ * @brief Holds the YOLO nets and the on/off classifier used by the pipeline
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import android.content.SharedPreferences;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.os.Environment;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.dnn.Net;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The two YOLO nets (regular and panic mode) and the TFLite model that predicts if a device is on or off.
+ * The cfg and the weights are expected in the Documents folder of the phone, the on/off model is an asset.
+ * All of them are memory mapped, see {@link ModelRepository}.
+ * <p/>
+ * {@link #startLoading()} loads the three models in parallel on background threads as soon as the app starts and
+ * runs one forward pass of each with the real input size, so the first camera frame doesn't pay for reading the
+ * files, allocating the layers and the first inference. Until {@link #isReady()} is true the frames are shown
+ * without detection. {@link #onOffModel} is written by the loader threads before the readiness future completes, so it
+ * can be read by any thread once it did, the nets are published through their {@link ModelSlot}.
+ * <p/>
+ * The first time the app runs on a phone model the yolo net is timed with every dnn backend, target and fusion
+ * setting by the {@link DnnTuner} on {@link #TUNING_FRAME} (random pixels if it isn't there). The fastest setting is
+ * stored in the shared preferences per {@code Build.MODEL} and used by all yolo nets from then on.
+ */
+class DetectionModels {
+
+    private static final String TAG = "DetectionModels";
+
+    static final int REGULAR = 0;
+    static final int PANIC = 1;     // "yoloBlack", trained to see in the dark
+    private static final String CFG = "yolov3tiny-custom.cfg";    // Shared by both nets
+    private static final String[] WEIGHTS = {"yolov3tiny-custom_final_Extra.weights", "yolov3tiny-custom_final_Black.weights"};
+    private static final String TUNING_FRAME = "tuning_frame.png";   // A recorded fused frame in the Documents folder
+    private static final String CONFIG_KEY = "dnn_config_" + Build.MODEL;
+    private static final int TUNING_RUNS = 3;
+
+    private final AssetManager assets;
+    private final SharedPreferences preferences;
+    final ModelSlot<Net> yolo = new ModelSlot<>("yolo", WEIGHTS.length);  // Both variants, the one that is used for prediction can be switched at any time
+    Interpreter onOffModel;
+    volatile NetworkDescriptor yoloDescriptor;  // Input size, classes and output layers of the yolo nets, both use the same cfg
+    private volatile DnnTuner.Config yoloConfig = DnnTuner.DEFAULT;     // Backend, target and fusion of the yolo nets
+    private volatile FutureTask<Void> ready = new FutureTask<>(this::load);
+    private ExecutorService loaders;
+
+    /**
+     * @param preferences where the tuned dnn configuration of this phone model is kept
+     */
+    DetectionModels(AssetManager assets, SharedPreferences preferences) {
+        this.assets = assets;
+        this.preferences = preferences;
+    }
+
+    /**
+     * Start loading and warming up the models in the background. Does nothing if they are loading or loaded
+     * already, starts again if the last attempt failed (e.g. the storage permission wasn't granted yet).
+     */
+    synchronized void startLoading() {
+        if (loaders != null) {
+            if (!hasFailed()) {
+                return;
+            }
+            ready = new FutureTask<>(this::load);
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        loaders = Executors.newFixedThreadPool(3, runnable -> new Thread(runnable, "model-loader-" + threadNumber.incrementAndGet()));
+        new Thread(ready, "model-loader").start();
+    }
+
+    /**
+     * Completes when all models are loaded and warmed up, fails if one of them couldn't be loaded
+     */
+    Future<Void> getReady() {
+        return ready;
+    }
+
+    /**
+     * True once the models can be used, never blocks
+     */
+    boolean isReady() {
+        if (!ready.isDone()) {
+            return false;
+        }
+        try {
+            ready.get();
+            return true;
+        } catch (InterruptedException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * True if the last loading attempt finished with an error
+     */
+    boolean hasFailed() {
+        return ready.isDone() && !isReady();
+    }
+
+    /**
+     * Block until the models are loaded, starts loading if that didn't happen yet
+     *
+     * @throws ExecutionException if a model couldn't be loaded
+     */
+    void awaitReady() throws InterruptedException, ExecutionException {
+        if (!isReady())
+            startLoading();
+        ready.get();
+    }
+
+    /**
+     * Switch between the regular and the panic mode model
+     *
+     * @return true if panic mode is now active
+     */
+    boolean togglePanicMode() {
+        return yolo.next() == PANIC;
+    }
+
+    /**
+     * Stop the loader threads, a load that is still running finishes in the background
+     */
+    synchronized void shutdown() {
+        if (loaders != null) {
+            loaders.shutdown();
+        }
+    }
+
+    private Void load() throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        if (!OpenCVLoader.initDebug()) {    // Dnn needs the native library, the camera thread may not have loaded it yet
+            throw new IllegalStateException("OpenCV could not be loaded");
+        }
+        NetworkDescriptor descriptor = NetworkDescriptor.parse(
+                new InputStreamReader(new FileInputStream(new File(documents(), CFG)), "UTF-8"), Collections.<String>emptyList());
+        if (descriptor.channels != 3) {     // The blob is built from the fused 3 channel frame
+            throw new IOException("The yolo cfg expects " + descriptor.channels + " channels, the fused input has 3");
+        }
+        DnnTuner.Config stored = DnnTuner.Config.decode(preferences.getString(CONFIG_KEY, null));
+        yoloConfig = stored != null ? stored : DnnTuner.DEFAULT;
+        DnnTuner.Config config = yoloConfig;
+        ModelRepository repository = new ModelRepository(documents());
+        ExecutorService loaders = this.loaders;
+        List<Future<Net>> nets = new ArrayList<>();
+        for (String weights : WEIGHTS) {
+            nets.add(loaders.submit(() -> darknet(repository, weights, descriptor, config)));
+        }
+        Future<Interpreter> onOff = loaders.submit(this::loadOnOffModel);
+        try {
+            List<Net> loaded = new ArrayList<>(nets.size());
+            for (Future<Net> net : nets) {
+                loaded.add(net.get());
+            }
+            onOffModel = onOff.get();
+            yoloDescriptor = descriptor.withOutputNames(loaded.get(0).getUnconnectedOutLayersNames());
+            if (stored == null) {
+                yoloConfig = tune(loaded);
+            } else if (yoloConfig != stored) {  // The stored configuration failed for one of the nets, run all of them with the default
+                for (Net net : loaded) {
+                    configure(net, yoloDescriptor, yoloConfig);
+                }
+            }
+            yolo.publish(loaded);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Unable to load the models, detection stays off: " + e.getCause());
+            throw e;
+        } finally {
+            loaders.shutdown();
+            repository.clear();
+        }
+        Log.d(TAG, "yolo: " + yoloDescriptor + ", " + yoloConfig);
+        Log.d(TAG, "Models loaded and warmed up in " + (SystemClock.elapsedRealtime() - start) + " ms, peak java heap "
+                + (repository.getPeakHeapBytes() >> 10) + " KB");
+        return null;
+    }
+
+    /**
+     * Time the first yolo net with every configuration, store the fastest and use it for the others as well.
+     * Both variants share the cfg, so they have the same fastest configuration.
+     */
+    private DnnTuner.Config tune(List<Net> loaded) {
+        long start = SystemClock.elapsedRealtime();
+        Mat frame = Imgcodecs.imread(new File(documents(), TUNING_FRAME).getPath());
+        Mat blob = DnnTuner.inputBlob(frame, yoloDescriptor);
+        frame.release();
+        DnnTuner tuner = new DnnTuner(TUNING_RUNS);
+        DnnTuner.Config best = tuner.tune(loaded.get(0), blob, yoloDescriptor.outputNames, DnnTuner.ALL_CANDIDATES);
+        blob.release();
+        Log.d(TAG, "Tuned the yolo net for " + Build.MODEL + " in " + (SystemClock.elapsedRealtime() - start) + " ms\n" + tuner.getReport());
+        for (int i = 1; i < loaded.size(); i++) {
+            configure(loaded.get(i), yoloDescriptor, best);
+        }
+        preferences.edit().putString(CONFIG_KEY, best.encode()).apply();
+        return best;
+    }
+
+    /**
+     * Load a yolo net and run it once on an empty input
+     */
+    private Net darknet(ModelRepository repository, String weights, NetworkDescriptor descriptor, DnnTuner.Config config) throws IOException {
+        Net net = repository.readDarknet(CFG, weights);
+        try {
+            configure(net, descriptor, config);
+        } catch (RuntimeException e) {  // The stored backend stopped working, e.g. after a driver update
+            Log.w(TAG, "Can't run " + weights + " with " + config + ", using " + DnnTuner.DEFAULT + ": " + e.getMessage());
+            preferences.edit().remove(CONFIG_KEY).apply();
+            yoloConfig = DnnTuner.DEFAULT;
+            configure(net, descriptor, DnnTuner.DEFAULT);
+        }
+        return net;
+    }
+
+    /**
+     * Apply a configuration to a net and run it once on an empty input, so the backend is set up
+     */
+    private static void configure(Net net, NetworkDescriptor descriptor, DnnTuner.Config config) {
+        config.apply(net);
+        Mat blob = BlobPreprocessor.createBlob(descriptor.inputHeight, descriptor.inputWidth);
+        blob.setTo(Scalar.all(0));
+        net.setInput(blob);
+        List<Mat> outputs = new ArrayList<>();
+        net.forward(outputs, net.getUnconnectedOutLayersNames());
+        for (Mat output : outputs) {
+            output.release();
+        }
+        blob.release();
+    }
+
+    private static File documents() {
+        return new File(Environment.getExternalStorageDirectory(), "Documents");
+    }
+
+    /**
+     * Map the on/off model from the assets and run it once on an empty input of the sizes the model declares
+     */
+    private Interpreter loadOnOffModel() throws IOException {
+        ByteBuffer tfLifeFile = ModelRepository.mapAsset(assets, "model.tflite");
+        Interpreter interpreter = new Interpreter(tfLifeFile);
+
+        Object[] inputs = {
+                ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes()).order(ByteOrder.nativeOrder()),
+                ByteBuffer.allocateDirect(interpreter.getInputTensor(1).numBytes()).order(ByteOrder.nativeOrder())};
+        Map<Integer, Object> outputs = new HashMap<>();
+        outputs.put(0, ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder()));
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+        return interpreter;
+    }
+}
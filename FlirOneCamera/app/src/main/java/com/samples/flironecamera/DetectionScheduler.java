@@ -0,0 +1,92 @@
+/*******************************************************************
+ * @file DetectionScheduler.java
+ *
+ * @brief Decides which frames run yolo when the boxes are tracked in between
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In tracking mode yolo only runs on every Nth frame (a key frame), the {@link BoxTracker} moves the boxes on the
+ * frames in between. N is the measured inference time divided by the time between two camera frames, rounded up,
+ * so that on average the detect stage needs no more time per frame than the camera takes to deliver one and the
+ * display keeps the sensor rate. Both times are running averages.
+ * <p/>
+ * The tracker asks for a key frame with {@link #requestDetection()} when it loses a box, the next frame the detect
+ * stage sees is then detected no matter how many frames passed. Everything except that call belongs to the detect
+ * thread.
+ */
+class DetectionScheduler {
+
+    private static final double SMOOTHING = 0.1;     // Weight of a new sample in the running averages
+
+    private final int maxInterval;
+    private final AtomicBoolean requested = new AtomicBoolean(true);
+    private double inferenceNanos = 0;
+    private double frameNanos = 0;
+    private long lastReceivedNanos = 0;
+    private long lastFrameNumber = -1;
+    private int sinceDetection = 0;
+
+    /**
+     * @param maxInterval the largest N, the boxes are never tracked for longer than that
+     */
+    DetectionScheduler(int maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * Whether yolo has to run on a frame
+     *
+     * @param frameNumber   counts every camera frame, also the ones that were dropped before the detect stage
+     * @param receivedNanos when the frame arrived, used to measure the camera frame rate
+     */
+    boolean shouldDetect(long frameNumber, long receivedNanos) {
+        if (lastFrameNumber >= 0 && frameNumber > lastFrameNumber) {
+            frameNanos = average(frameNanos, (receivedNanos - lastReceivedNanos) / (frameNumber - lastFrameNumber));
+        }
+        lastReceivedNanos = receivedNanos;
+        lastFrameNumber = frameNumber;
+        sinceDetection++;
+        if (requested.getAndSet(false) || sinceDetection >= getInterval()) {
+            sinceDetection = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add the time of one yolo forward pass to the average
+     */
+    void detectionTook(long nanos) {
+        inferenceNanos = average(inferenceNanos, nanos);
+    }
+
+    /**
+     * Detect on the next frame, may be called from any thread
+     */
+    void requestDetection() {
+        requested.set(true);
+    }
+
+    /**
+     * The current N, 1 means every frame is detected
+     */
+    int getInterval() {
+        if (frameNanos <= 0) {
+            return 1;
+        }
+        int interval = (int) Math.ceil(inferenceNanos / frameNanos);
+        return Math.max(1, Math.min(maxInterval, interval));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("detect every %d frames, inference %.1f ms, frame %.1f ms", getInterval(), inferenceNanos / 1e6, frameNanos / 1e6);
+    }
+
+    private static double average(double average, long sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+}
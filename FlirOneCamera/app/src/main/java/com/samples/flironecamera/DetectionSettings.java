@@ -0,0 +1,28 @@
+/*******************************************************************
+ * @file DetectionSettings.java
+ *
+ * @brief Visualisation toggles shared between the UI and the pipeline threads
+ ********************************************************************/
+package com.samples.flironecamera;
+
+/**
+ * The menu and the seek bar change these values on the ui thread while the pipeline stages read them on their
+ * own threads, so all of them are volatile.
+ */
+class DetectionSettings {
+    volatile int confidencePercent = 0;
+    volatile boolean segmentationOn = false;
+    volatile boolean boundingBoxOn = false;
+    volatile boolean labelsOn = false;
+    volatile boolean sphereOn = false;
+    volatile boolean shapeOn = false;
+    volatile boolean classAwareNms = false;     // Non maximum suppression only between boxes of the same class
+    volatile boolean softNms = false;           // Lower the score of overlapping boxes instead of removing them
+    volatile boolean trackingOn = false;        // Detect on key frames only and track the boxes in between
+    volatile boolean sceneGateOn = false;       // Skip the detection of frames where the thermal image didn't change
+    volatile boolean tiledOn = false;           // Detect overlapping tiles of the frame to find small devices
+
+    float confThreshold() {
+        return (float) (confidencePercent / 100.0);
+    }
+}
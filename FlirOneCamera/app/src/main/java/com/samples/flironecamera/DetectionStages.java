@@ -0,0 +1,446 @@
+/*******************************************************************
+ * @file DetectionStages.java
+ *
+ * @brief The stages of the smart device detection pipeline
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import android.os.Environment;
+import android.util.Log;
+
+import org.opencv.android.Utils;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.dnn.Net;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The processing that used to happen inside {@code MainActivity.streamDataListener.images()}, split into
+ * ingest -> align/fuse -> detect -> postprocess -> classify -> render so every step can run on its own {@link FramePipeline} thread.
+ * Each method is a {@link FramePipeline.Stage} and only reads and writes the {@link FrameContext} it is given.
+ */
+class DetectionStages {
+
+    private static final String TAG = "DetectionStages";
+
+    private static final int PRE_NMS_TOP_K = 200;     // Only the best candidates go into non maximum suppression, at a low confidence threshold there are thousands
+    private static final int MAX_TRACKED_FRAMES = 8;  // In tracking mode at least every 8th frame is detected
+    private static final int TILE_GRID = 2;           // Tiled mode detects the whole frame and 2x2 tiles in one batch
+
+    private static final List<String> cocoNames = Arrays.asList("Mobile Off", "Laptop Off", "Speaker Off", "Alexa Off", "Screen Off", "Mobile On", "Laptop On", "Speaker On", "Alexa On", "Screen On");
+
+    private final DetectionSettings settings;
+    private final DetectionModels models;
+    private final MatPool pool = new MatPool(24);
+    private final ThermalRegistration registration = new ThermalRegistration(true);
+    private final FusionKernel fusion = new FusionKernel();
+    private final BlobPreprocessor yoloInput = new BlobPreprocessor(0.00392f); // Only touched by the detect thread
+    private final OverlaySprites sprites = new OverlaySprites(Environment.getExternalStorageDirectory() + "/Documents/", 32, 8); // Only touched by the render thread
+    private final OverlayLayer overlay = new OverlayLayer();    // Only touched by the render thread
+    private final GlyphCache glyphs = new GlyphCache(64);        // Only touched by the render thread
+    private final DetectionScheduler scheduler = new DetectionScheduler(MAX_TRACKED_FRAMES);
+    private boolean wasTracking = false;                            // Only touched by the detect thread
+    private List<Rect> tiles = null;                                // Of the last frame size, only touched by the detect thread
+    private final SceneChangeGate sceneGate = new SceneChangeGate(8, 0.01, 30);   // Only checked by the detect thread
+    private long detectedSettings = -1;     // detectionSettings() of the last detected frame, only touched by the detect thread
+    private final YoloDecoder decoder = new YoloDecoder();         // Only touched by the postprocess thread
+    private final BoxTracker tracker = new BoxTracker();            // Only touched by the postprocess thread
+    private final Detections lastResult = new Detections();       // Kept boxes of the last frame, only touched by the postprocess thread
+    private final Map<Integer, Boolean> onByTrack = new HashMap<>();    // On/off of each track at its last key frame, only touched by the classify thread
+    private boolean[] lastOn = new boolean[0];      // On/off of the kept boxes of the last frame, only touched by the classify thread
+    private OnOffClassifier onOffClassifier = null;  // Only touched by the classify thread
+    private volatile CalibrationProfiles calibration = CalibrationProfiles.defaults();
+    private volatile String cameraId = null;    // deviceId of the connected camera, selects the calibration profile
+
+    DetectionStages(DetectionSettings settings, DetectionModels models) {
+        this.settings = settings;
+        this.models = models;
+    }
+
+    void setCalibration(CalibrationProfiles calibration) {
+        this.calibration = calibration;
+    }
+
+    void setCameraId(String cameraId) {
+        this.cameraId = cameraId;
+    }
+
+    MatPool getMatPool() {
+        return pool;
+    }
+
+    /**
+     * How many frames the scene change gate skipped
+     */
+    SceneChangeGate getSceneGate() {
+        return sceneGate;
+    }
+
+    /**
+     * Free the pooled buffers, the cached overlay images and labels, the overlay layer and the yolo input blob, only call this when the pipeline is stopped
+     */
+    void clearCaches() {
+        pool.clear();
+        sprites.clear();
+        glyphs.clear();
+        overlay.clear();
+        yoloInput.release();
+    }
+
+    /**
+     * Give the buffers of a frame back, for frames that didn't reach the end of the render stage
+     */
+    void release(FrameContext frame) {
+        frame.releaseBuffers(pool);
+    }
+
+    /**
+     * Register all stages on the pipeline in the right order
+     */
+    FramePipeline<FrameContext> addTo(FramePipeline<FrameContext> pipeline) {
+        return pipeline
+                .addStage("ingest", this::ingest)
+                .addStage("alignFuse", this::alignFuse)
+                .addStage("detect", this::detect)
+                .addStage("postprocess", this::postprocess)
+                .addStage("classify", this::classify)
+                .addStage("render", this::render);
+    }
+
+    /**
+     * Convert the camera bitmaps to Mat objects
+     */
+    void ingest(FrameContext frame) {
+        // Opencv uses this Mat object so we convert the bitmap object which android uses for images to Mat
+        Mat rgba = frame.acquire(pool, frame.dcBitmap.getHeight(), frame.dcBitmap.getWidth(), CvType.CV_8UC4);
+        Mat thermalRgba = frame.acquire(pool, frame.msxBitmap.getHeight(), frame.msxBitmap.getWidth(), CvType.CV_8UC4);
+        Utils.bitmapToMat(frame.dcBitmap, rgba);
+        Utils.bitmapToMat(frame.msxBitmap, thermalRgba);
+        frame.frameRGB = frame.acquire(pool, rgba.rows(), rgba.cols(), CvType.CV_8UC3);
+        frame.frameThermal = frame.acquire(pool, thermalRgba.rows(), thermalRgba.cols(), CvType.CV_8UC3);
+        Imgproc.cvtColor(thermalRgba, frame.frameThermal, Imgproc.COLOR_RGBA2BGR); // The Images are in form of RGBA after they are converted so they are changed to RGB to be easier to deal with
+        Imgproc.cvtColor(rgba, frame.frameRGB, Imgproc.COLOR_RGBA2RGB);
+    }
+
+    /**
+     * Align the thermal image to the rgb image and merge both into the 3 channel input of yolo
+     */
+    void alignFuse(FrameContext frame) {
+        Mat frameRGB = frame.frameRGB;
+        int rows = frameRGB.rows();
+        int cols = frameRGB.cols();
+        // Resize the thermal image to 0.81 of the rgb size and shift it by 120, 185 (or whatever the calibration profile of the camera says) in one remap, this aligns the thermal and rgb images together
+        Mat frameThermal = frame.acquire(pool, rows, cols, CvType.CV_8UC3);
+        registration.align(frame.frameThermal, frameThermal, calibration.get(cameraId, rows, cols));
+        frame.frameThermal = frameThermal;
+
+        // This next block of code merges the rgb and thermal images together to be fed to the classifier
+        Mat combinedMat = frame.acquire(pool, rows, cols, CvType.CV_8UC3);
+        fusion.fuse(frameRGB, frameThermal, combinedMat);
+        frame.combinedMat = combinedMat;
+    }
+
+    /**
+     * Run yolo on the fused image, in tracking mode only on key frames and with the scene gate only if the thermal
+     * image changed. A frame whose threshold or nms settings differ from the last detected one is always detected,
+     * the reused or tracked boxes were found with the old ones.
+     */
+    void detect(FrameContext frame) throws InterruptedException, ExecutionException {
+        if (frame.tracking) {
+            if (!wasTracking)
+                scheduler.requestDetection();   // Nothing is tracked yet
+            frame.detected = scheduler.shouldDetect(frame.frameNumber, frame.receivedNanos);
+        }
+        wasTracking = frame.tracking;
+        long detectionSettings = detectionSettings(frame);
+        if (detectionSettings != detectedSettings) {
+            sceneGate.reset();      // Makes the current frame the gate's new reference
+            frame.detected = true;
+        }
+        if (!settings.sceneGateOn)
+            sceneGate.reset();
+        else if (frame.detected)
+            frame.detected = sceneGate.hasChanged(frame.combinedMat);
+        if (!frame.detected)
+            return;             // The postprocess stage moves or reuses the boxes of the last detected frame
+        detectedSettings = detectionSettings;
+        long start = System.nanoTime();
+        models.awaitReady();    // Frames are only submitted once the models are ready, this doesn't wait in practice
+        Net tinyYolo = models.yolo.get();  // The regular or the panic mode net, a switch shows up here on the next frame
+        NetworkDescriptor network = models.yoloDescriptor;
+        // The combinedMat is parsed to be given to yolo as input, same result as Dnn.blobFromImage(combinedMat, 0.00392, new Size(width, height), new Scalar(0, 0, 0), false, false)
+        // The blob is reused for every frame, it is only read by the forward pass below
+        if (settings.tiledOn) {
+            frame.tiles = tiles(frame.combinedMat.cols(), frame.combinedMat.rows());
+            tinyYolo.setInput(yoloInput.prepare(frame.combinedMat, frame.tiles, network.inputWidth, network.inputHeight));
+        } else {
+            tinyYolo.setInput(yoloInput.prepare(frame.combinedMat, network.inputWidth, network.inputHeight));
+        }
+        tinyYolo.forward(frame.yoloOutputs, network.outputNames); // One output per yolo head, the names were read when the net was loaded
+        scheduler.detectionTook(System.nanoTime() - start);
+    }
+
+    /**
+     * Read the yolo outputs into candidate boxes and apply non maximum suppression, in tracking mode also update
+     * the tracks on key frames and move them on the other frames
+     */
+    void postprocess(FrameContext frame) {
+        if (frame.detected) {
+            int frameCols = frame.frameRGB.cols();
+            int frameRows = frame.frameRGB.rows();
+            // Each output layer is copied to Java once, the rows are decoded from the float array
+            if (frame.tiles != null)
+                decoder.decode(frame.yoloOutputs, frame.tiles, models.yoloDescriptor.classes, frame.confThreshold, frame.detections);
+            else
+                decoder.decode(frame.yoloOutputs, models.yoloDescriptor.classes, frame.confThreshold, frameCols, frameRows, frame.detections);
+            // Apply non-maximum suppression procedure, the on/off model and the segmentation only look at the kept boxes
+            // In tiled mode this also merges the boxes of a device that was found in more than one tile
+            if (settings.softNms)
+                frame.keptIndices = YoloPostProcessor.softSuppress(frame.detections, frame.confThreshold, NonMaxSuppression.SOFT_NMS_SIGMA,
+                        NonMaxSuppression.SOFT_NMS_MIN_SCORE, settings.classAwareNms, PRE_NMS_TOP_K);
+            else
+                frame.keptIndices = YoloPostProcessor.suppress(frame.detections, frame.confThreshold, NonMaxSuppression.NMS_THRESHOLD,
+                        settings.classAwareNms, PRE_NMS_TOP_K);
+        }
+        if (!frame.tracking) {
+            tracker.reset();
+            if (!frame.detected) {
+                frame.keptIndices = allIndices(lastResult.size());    // Nothing changed since the last frame
+                frame.detections.addAll(lastResult, frame.keptIndices);
+                frame.reused = true;
+            }
+        } else if (frame.detected) {
+            tracker.update(frame.frameRGB, frame);
+        } else if (!tracker.propagate(frame.frameRGB, frame)) {
+            scheduler.requestDetection();   // A box was lost, detect again on the next frame
+        }
+        lastResult.clear();
+        lastResult.addAll(frame.detections, frame.keptIndices);  // Before the on/off classification changes the classes
+    }
+
+    /**
+     * Predict if each kept device is on or off and add the kept boxes to the segmentation. A tracked box that isn't
+     * on a key frame keeps the on/off result of its track, a reused box the one of the frame before.
+     */
+    void classify(FrameContext frame) {
+        Mat frameRGB = frame.frameRGB;
+        Mat frameThermal = frame.frameThermal;
+        boolean segmentationOn = settings.segmentationOn;
+        frame.bgrThermal = splitChannels(frame, frameThermal); // splits the thermal image to R,G,B channels
+        /////////////////////////////Create Segmentation///////////////////////////////////
+        Mat destination = null;
+        List<Mat> bgrSegm = null;
+        if (segmentationOn) {
+            bgrSegm = splitChannels(frame, frameRGB);
+            destination = frame.acquire(pool, frameRGB.rows(), frameRGB.cols(), CvType.CV_8UC1);
+            Scalar s = Core.mean(frame.bgrThermal.get(0));
+            double thresh = (s.val[0] * 1080 * 1440 * 1) / Core.countNonZero(frame.bgrThermal.get(0));
+            Imgproc.threshold(frame.bgrThermal.get(0), destination, thresh, 255, 3);
+        }
+        frame.destination = destination;
+        frame.bgrSegm = bgrSegm;
+        /////////////////////////////Create Segmentation///////////////////////////////////
+        if (onOffClassifier == null) {
+            onOffClassifier = new OnOffClassifier(models.onOffModel, models.yoloDescriptor.classes);
+        }
+        OnOffClassifier onOff = onOffClassifier;
+        onOff.clear();
+        if (frame.detected)
+            onByTrack.clear();      // Every kept box of a key frame is classified again
+        int[] classified = new int[frame.keptIndices.length];  // Which kept box each on/off input belongs to
+        boolean[] on = new boolean[frame.keptIndices.length];
+        Mat modelInput = frame.acquire(pool, OnOffClassifier.INPUT_HEIGHT, OnOffClassifier.INPUT_WIDTH, CvType.CV_8UC3); // Reused for every box, add() copies it
+        Mat curBoxWarped = null;
+        Mat warpMatTmp = null;
+        if (segmentationOn) {   // Reused for every box like modelInput
+            curBoxWarped = frame.acquire(pool, frameRGB.rows(), frameRGB.cols(), CvType.CV_8UC1); // warpAffine fills the whole output, the border is 0
+            warpMatTmp = frame.acquire(pool, 2, 3, CvType.CV_64FC1);
+        }
+        for (int i = 0; i < frame.keptIndices.length; i++) {
+            int idx = frame.keptIndices[i];
+            Rect rectCrop = frame.detections.rect(idx);
+            //New representation//////////////////////////////////////////
+            if (segmentationOn) {
+                Mat segInput = destination.submat(rectCrop);
+                warpMatTmp.put(0, 0, 1, 0, rectCrop.x, 0, 1, rectCrop.y);
+                Imgproc.warpAffine(segInput, curBoxWarped, warpMatTmp, curBoxWarped.size());
+                segInput.release();
+
+                Mat tempNewRed = bgrSegm.get(0);
+                Core.addWeighted(bgrSegm.get(0), 1, curBoxWarped, 1, 0, tempNewRed);
+                bgrSegm.set(0, tempNewRed);
+            }
+            //End of new rep.//////////////////////////////////////////////
+            Boolean knownOn = frame.trackIds != null ? onByTrack.get(frame.trackIds[i]) : frame.reused && i < lastOn.length ? lastOn[i] : null;
+            if (knownOn != null) {
+                on[i] = knownOn;
+                continue;
+            }
+            Imgproc.resize(frameThermal.submat(rectCrop), modelInput, modelInput.size()); // Crop the thermal image according to the x,y predicted by yolo and resize the input to feed to the network
+            classified[onOff.size()] = i;
+            onOff.add(frame.detections.classId(idx), modelInput); // The on/Off model gets both the label of the object (one-hot encoded) and the thermal image
+        }
+        float[] onProbabilities = onOff.run(); // One call of the on/Off model for all kept boxes of the frame that need it
+        for (int j = 0; j < onOff.size(); j++) {
+            int i = classified[j];
+            on[i] = onProbabilities[j] > 0.5;
+            if (frame.trackIds != null)
+                onByTrack.put(frame.trackIds[i], on[i]);
+        }
+        lastOn = on;
+        for (int i = 0; i < on.length; i++) {
+            if (on[i]) { //Change the label as *nameOfDevice*On or *nameOfDevice*Off according to prediction
+                int idx = frame.keptIndices[i];
+                frame.detections.setClassId(idx, frame.detections.classId(idx) + models.yoloDescriptor.classes);
+            }
+        }
+    }
+
+    /**
+     * Draw the visualisations of the kept boxes and write the images back to the bitmaps
+     */
+    void render(FrameContext frame) {
+        Mat frameRGB = frame.frameRGB;
+        Mat frameThermal = frame.frameThermal;
+        List<Mat> bgrThermal = frame.bgrThermal;
+        List<Mat> bgrColor = splitChannels(frame, frameRGB);
+        bgrThermal.set(1, bgrColor.get(1));
+        bgrThermal.set(2, bgrColor.get(2));
+        Core.merge(bgrThermal, frameThermal);
+        // Resize image back for debugging
+        Mat thermalDisplay = frame.acquire(pool, 640, 480, CvType.CV_8UC3);
+        Imgproc.resize(frameThermal, thermalDisplay, thermalDisplay.size());
+        if (frame.bgrSegm != null)
+            Core.merge(frame.bgrSegm, frameRGB);
+
+        boolean labelsOn = settings.labelsOn;
+        boolean sphereOn = settings.sphereOn;
+        boolean shapeOn = settings.shapeOn;
+        boolean boundingBoxOn = settings.boundingBoxOn;
+        if (overlay.begin(frameRGB, overlaySignature(frame, labelsOn, sphereOn, shapeOn, boundingBoxOn))) {
+            // The detections changed, draw them again. Otherwise the overlay of the last frame is reused
+            for (int idx : frame.keptIndices) {
+                drawOverlay(frame.detections.rect(idx), frame.detections.classId(idx), labelsOn, sphereOn, shapeOn, boundingBoxOn);
+            }
+        }
+        overlay.composite(frameRGB);
+        Utils.matToBitmap(frameRGB, frame.dcBitmap);
+        try {
+            Utils.matToBitmap(thermalDisplay, frame.msxBitmap);
+        } catch (Exception e) {
+            Log.e("TAG MatToBitmap Error", e.toString());
+        }
+        frame.releaseBuffers(pool);  // The bitmaps hold the result now, the buffers are used by the next frames
+    }
+
+    /**
+     * Draw the visualisations of one box into the overlay layer
+     */
+    private void drawOverlay(Rect box, int idGuy, boolean labelsOn, boolean sphereOn, boolean shapeOn, boolean boundingBoxOn) {
+        //Text
+        if (labelsOn) {
+            int boxWidth = 200;
+            int boxHeight = 400;
+            Point top = new Point((-boxWidth / 2) + (box.tl().x + box.br().x) / 2, box.tl().y);
+            Point bottom = new Point((boxWidth / 2) + (box.tl().x + box.br().x) / 2, box.tl().y - boxHeight);
+            overlay.translucentRectangle(top, bottom, new Scalar(150, 150, 150), 0.5);
+
+            int thickness = 3;
+            int fontScale = 1;
+            Scalar textColor = new Scalar(255, 255, 255);
+            glyphs.putText(overlay, "Device:", new Point((-boxWidth / 2) + (box.tl().x + box.br().x) / 2, box.tl().y - boxHeight + 50), 0, fontScale, textColor, thickness);
+            glyphs.putText(overlay, cocoNames.get(idGuy), new Point((-boxWidth / 2) + (box.tl().x + box.br().x) / 2, box.tl().y - boxHeight + 100), 0, fontScale, textColor, thickness);
+            glyphs.putText(overlay, "Tracking:", new Point((-boxWidth / 2) + (box.tl().x + box.br().x) / 2, box.tl().y - boxHeight + 200), 0, fontScale, textColor, thickness);
+            glyphs.putText(overlay, "Microphone", new Point((-boxWidth / 2) + (box.tl().x + box.br().x) / 2, box.tl().y - boxHeight + 250), 0, fontScale, textColor, thickness);
+            if (!(idGuy == 2 || idGuy == 3 || idGuy == 7 || idGuy == 8))
+                glyphs.putText(overlay, "& Camera", new Point((-boxWidth / 2) + (box.tl().x + box.br().x) / 2, box.tl().y - boxHeight + 300), 0, fontScale, textColor, thickness);
+            glyphs.putText(overlay, "V", new Point((box.tl().x + box.br().x) / 2, box.tl().y - boxHeight + 380), 0, fontScale, textColor, thickness);
+        }
+        if (sphereOn) {
+            double biggerDim = Math.max(box.width, box.height) * 1.3;
+            sprites.draw(overlay, OverlaySprites.SPHERE, biggerDim, box.x - biggerDim * 0.1, box.y - biggerDim * 0.25, 0.5);
+        }
+
+        if (shapeOn) {
+            String name = (idGuy == 2 || idGuy == 3 || idGuy == 7 || idGuy == 8) ? OverlaySprites.MIC : OverlaySprites.MIC_AND_CAMERA;
+            double biggerDim = Math.max(box.width, box.height) * 0.3;
+            sprites.draw(overlay, name, biggerDim, box.x + biggerDim * 1.2, box.y + biggerDim * 0.8, 1);
+        }
+
+        if (boundingBoxOn)
+            overlay.rectangle(box.tl(), box.br(), new Scalar(255, 0, 0), 4);
+    }
+
+    /**
+     * Everything besides the image that the boxes of a detected frame depend on: the confidence threshold, the
+     * nms mode and the tiles, packed into one value so the detect thread can compare it without allocating
+     */
+    private long detectionSettings(FrameContext frame) {
+        return (long) Float.floatToIntBits(frame.confThreshold) << 32
+                | (settings.classAwareNms ? 1 : 0) | (settings.softNms ? 2 : 0) | (settings.tiledOn ? 4 : 0);
+    }
+
+    /**
+     * The tiles of a frame size, the same list is reused as long as the size doesn't change
+     */
+    private List<Rect> tiles(int frameCols, int frameRows) {
+        Rect whole = tiles == null ? null : tiles.get(0);
+        if (whole == null || whole.width != frameCols || whole.height != frameRows) {
+            tiles = DetectionTiles.grid(frameCols, frameRows, TILE_GRID);
+        }
+        return tiles;
+    }
+
+    /**
+     * Everything the overlay of a frame depends on, the overlay is only drawn again when this changes
+     */
+    private static int[] overlaySignature(FrameContext frame, boolean labelsOn, boolean sphereOn, boolean shapeOn, boolean boundingBoxOn) {
+        int[] signature = new int[1 + frame.keptIndices.length * 5];
+        signature[0] = (labelsOn ? 1 : 0) | (sphereOn ? 2 : 0) | (shapeOn ? 4 : 0) | (boundingBoxOn ? 8 : 0);
+        int i = 1;
+        for (int idx : frame.keptIndices) {
+            Detections detections = frame.detections;
+            signature[i++] = detections.x(idx);
+            signature[i++] = detections.y(idx);
+            signature[i++] = detections.width(idx);
+            signature[i++] = detections.height(idx);
+            signature[i++] = detections.classId(idx);
+        }
+        return signature;
+    }
+
+    /**
+     * 0, 1, ..., count - 1
+     */
+    private static int[] allIndices(int count) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Same as Core.split but the channels are pooled buffers of the frame
+     */
+    private List<Mat> splitChannels(FrameContext frame, Mat mat) {
+        List<Mat> channels = new ArrayList<>(mat.channels());
+        for (int i = 0; i < mat.channels(); i++) {
+            Mat channel = frame.acquire(pool, mat.rows(), mat.cols(), CvType.makeType(mat.depth(), 1));
+            Core.extractChannel(mat, channel, i);
+            channels.add(channel);
+        }
+        return channels;
+    }
+}
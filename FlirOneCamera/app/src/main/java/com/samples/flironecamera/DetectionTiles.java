@@ -0,0 +1,50 @@
+/*******************************************************************
+ * @file DetectionTiles.java
+ *
+ * @brief Splits a frame into overlapping tiles that are detected in one batch
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The whole 1080x1440 frame squashed to the 416x416 yolo input leaves a phone across the room with a few pixels.
+ * In tiled mode the frame is split into a grid of overlapping tiles, each of them is scaled to the input size on
+ * its own, so a device covers about {@code grid * grid} times as many input pixels. The whole frame is added as the first
+ * tile, so devices that are larger than a tile or cut by a tile border are still found in one piece.
+ * All tiles go through the net in one batch, the boxes are moved back to frame coordinates and merged by the
+ * normal non maximum suppression.
+ */
+final class DetectionTiles {
+
+    private static final double OVERLAP = 0.2;    // Of the tile size, so a device on a border is whole in one tile
+
+    private DetectionTiles() {
+    }
+
+    /**
+     * The whole frame and a grid of overlapping tiles that covers it
+     *
+     * @param grid tiles per row and per column, 1 only gives the whole frame
+     */
+    static List<Rect> grid(int frameCols, int frameRows, int grid) {
+        List<Rect> tiles = new ArrayList<>(1 + grid * grid);
+        tiles.add(new Rect(0, 0, frameCols, frameRows));
+        if (grid > 1) {
+            int tileCols = (int) Math.ceil(frameCols / (grid - OVERLAP * (grid - 1)));
+            int tileRows = (int) Math.ceil(frameRows / (grid - OVERLAP * (grid - 1)));
+            for (int row = 0; row < grid; row++) {
+                for (int column = 0; column < grid; column++) {
+                    int x = Math.min((int) (column * tileCols * (1 - OVERLAP)), frameCols - tileCols);
+                    int y = Math.min((int) (row * tileRows * (1 - OVERLAP)), frameRows - tileRows);
+                    tiles.add(new Rect(x, y, tileCols, tileRows));
+                }
+            }
+        }
+        return Collections.unmodifiableList(tiles);
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************
+ * @file Detections.java
+ *
+ * @brief The candidate boxes of a frame in primitive arrays
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+
+/**
+ * Boxes, scores and classes of the yolo candidates, stored in growing {@code int[]} and {@code float[]} arrays
+ * instead of lists of {@code Rect}, {@code Float} and {@code Integer}. Decoding a frame adds no objects once the
+ * arrays are large enough, and {@link NonMaxSuppression} reads the coordinates without unboxing.
+ * {@link #rect(int)} creates a {@code Rect} for the OpenCV calls that need one.
+ * <p/>
+ * Not thread safe, like the rest of the {@link FrameContext} it is only touched by one stage at a time.
+ */
+final class Detections {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size = 0;
+    private int[] boxes = new int[INITIAL_CAPACITY * 4];    // x, y, width, height of each box
+    private float[] scores = new float[INITIAL_CAPACITY];
+    private int[] classIds = new int[INITIAL_CAPACITY];
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Add a box
+     *
+     * @return its index
+     */
+    int add(int x, int y, int width, int height, float score, int classId) {
+        if (size == scores.length) {
+            int capacity = size * 2;
+            boxes = Arrays.copyOf(boxes, capacity * 4);
+            scores = Arrays.copyOf(scores, capacity);
+            classIds = Arrays.copyOf(classIds, capacity);
+        }
+        int b = size * 4;
+        boxes[b] = x;
+        boxes[b + 1] = y;
+        boxes[b + 2] = width;
+        boxes[b + 3] = height;
+        scores[size] = score;
+        classIds[size] = classId;
+        return size++;
+    }
+
+    int add(Rect box, float score, int classId) {
+        return add(box.x, box.y, box.width, box.height, score, classId);
+    }
+
+    /**
+     * Add the given boxes of another result, in the order of {@code indices}
+     */
+    void addAll(Detections other, int[] indices) {
+        for (int i : indices) {
+            int b = i * 4;
+            add(other.boxes[b], other.boxes[b + 1], other.boxes[b + 2], other.boxes[b + 3], other.scores[i], other.classIds[i]);
+        }
+    }
+
+    int x(int i) {
+        return boxes[i * 4];
+    }
+
+    int y(int i) {
+        return boxes[i * 4 + 1];
+    }
+
+    int width(int i) {
+        return boxes[i * 4 + 2];
+    }
+
+    int height(int i) {
+        return boxes[i * 4 + 3];
+    }
+
+    float score(int i) {
+        return scores[i];
+    }
+
+    void setScore(int i, float score) {
+        scores[i] = score;
+    }
+
+    int classId(int i) {
+        return classIds[i];
+    }
+
+    void setClassId(int i, int classId) {
+        classIds[i] = classId;
+    }
+
+    /**
+     * A new {@code Rect} of a box
+     */
+    Rect rect(int i) {
+        int b = i * 4;
+        return new Rect(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3]);
+    }
+
+    /**
+     * Intersection over union of two boxes, 1 for two empty boxes like {@code cv::jaccardDistance}
+     */
+    float overlap(int a, int b) {
+        int[] box = boxes;
+        int i = a * 4;
+        int j = b * 4;
+        return NonMaxSuppression.overlap(box[i], box[i + 1], box[i + 2], box[i + 3], box[j], box[j + 1], box[j + 2], box[j + 3]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            text.append(i == 0 ? "" : ", ").append(String.format("#%d class %d conf %.3f %s", i, classIds[i], scores[i], rect(i)));
+        }
+        return text.append(']').toString();
+    }
+}
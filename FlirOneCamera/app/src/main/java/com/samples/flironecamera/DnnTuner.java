@@ -0,0 +1,261 @@
+/*******************************************************************
+ * @file DnnTuner.java
+ *
+ * @brief Picks the fastest OpenCV dnn backend, target and fusion setting for a net
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a net with every candidate {@link Config} on the same input and keeps the one with the lowest wall clock time
+ * of {@code setInput} plus {@code forward}, which includes the upload of the input and the download of the outputs
+ * that {@code Net.getPerfProfile} (only the layer times, shown in the report) leaves out and that decide between
+ * OpenCL and the CPU. Configurations that fail, e.g. OpenCL on a device without a driver, are skipped, and so are
+ * the ones whose outputs differ from the CPU reference by more than {@link #OUTPUT_TOLERANCE}, e.g. FP16 targets or a
+ * broken driver, so a fast but wrong backend is never stored.
+ * <p/>
+ * Doesn't use any Android classes, so the tuning can be run with the CPU candidates on a desktop JVM, see
+ * {@code BackendTuningBenchmark} in the benchmarks module. Storing the result is up to the caller, {@link Config#encode()} turns it into a string.
+ */
+class DnnTuner {
+
+    /**
+     * A backend, a target and whether layers are fused
+     */
+    static final class Config {
+        final int backend;
+        final int target;
+        final boolean fusion;
+
+        Config(int backend, int target, boolean fusion) {
+            this.backend = backend;
+            this.target = target;
+            this.fusion = fusion;
+        }
+
+        void apply(Net net) {
+            net.setPreferableBackend(backend);
+            net.setPreferableTarget(target);
+            net.enableFusion(fusion);
+        }
+
+        String encode() {
+            return backend + "," + target + "," + fusion;
+        }
+
+        /**
+         * The config of a string from {@link #encode()}, null if there is none or it is invalid
+         */
+        static Config decode(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split(",");
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Config(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Boolean.parseBoolean(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "backend " + backend + " target " + target + (fusion ? " fused" : " unfused");
+        }
+    }
+
+    /**
+     * What the nets ran with before there was a tuner
+     */
+    static final Config DEFAULT = new Config(Dnn.DNN_BACKEND_DEFAULT, Dnn.DNN_TARGET_CPU, true);
+
+    /**
+     * Candidates that work on every machine
+     */
+    static final List<Config> CPU_CANDIDATES = Collections.unmodifiableList(Arrays.asList(
+            DEFAULT,
+            new Config(Dnn.DNN_BACKEND_DEFAULT, Dnn.DNN_TARGET_CPU, false),
+            new Config(Dnn.DNN_BACKEND_OPENCV, Dnn.DNN_TARGET_CPU, true),
+            new Config(Dnn.DNN_BACKEND_OPENCV, Dnn.DNN_TARGET_CPU, false)));
+
+    /**
+     * The CPU candidates plus the GPU targets of the OpenCV backend
+     */
+    static final List<Config> ALL_CANDIDATES;
+
+    static {
+        List<Config> all = new ArrayList<>(CPU_CANDIDATES);
+        all.add(new Config(Dnn.DNN_BACKEND_OPENCV, Dnn.DNN_TARGET_OPENCL, true));
+        all.add(new Config(Dnn.DNN_BACKEND_OPENCV, Dnn.DNN_TARGET_OPENCL_FP16, true));
+        all.add(new Config(Dnn.DNN_BACKEND_VKCOM, Dnn.DNN_TARGET_VULKAN, true));
+        ALL_CANDIDATES = Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Largest difference of any output value to the CPU reference that a candidate may have. The yolo outputs are
+     * relative coordinates and scores between 0 and 1, FP16 rounding stays well below this.
+     */
+    static final double OUTPUT_TOLERANCE = 0.02;
+
+    private static final Config REFERENCE = new Config(Dnn.DNN_BACKEND_OPENCV, Dnn.DNN_TARGET_CPU, true);
+
+    private final int runs;
+    private final StringBuilder report = new StringBuilder();
+
+    /**
+     * @param runs timed forward passes per candidate after one untimed pass, the fastest one counts
+     */
+    DnnTuner(int runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * Time every candidate whose outputs match the CPU reference and leave the net configured with the fastest one
+     *
+     * @param input a real (recorded) input blob of the net
+     * @return the fastest matching candidate, {@link #DEFAULT} if none of them worked
+     */
+    Config tune(Net net, Mat input, List<String> outputNames, List<Config> candidates) {
+        List<Mat> reference = new ArrayList<>();
+        List<Mat> outputs = new ArrayList<>();
+        Config best = null;
+        try {
+            REFERENCE.apply(net);
+            net.setInput(input);
+            net.forward(reference, outputNames);
+            double bestMillis = Double.MAX_VALUE;
+            for (Config candidate : candidates) {
+                double[] millis;
+                double difference;
+                try {
+                    millis = measure(net, candidate, input, outputNames, outputs);
+                    difference = maxDifference(reference, outputs);
+                } catch (RuntimeException e) {   // CvException when the backend or target isn't available
+                    report.append(candidate).append(": failed, ").append(e.getMessage()).append('\n');
+                    continue;
+                } finally {
+                    release(outputs);
+                }
+                report.append(candidate).append(": ").append(String.format("%.2f ms (layers %.2f ms), max difference %.4f", millis[0], millis[1], difference));
+                if (!(difference <= OUTPUT_TOLERANCE)) {     // NaN outputs are rejected as well
+                    report.append(", rejected\n");
+                    continue;
+                }
+                report.append('\n');
+                if (millis[0] < bestMillis) {
+                    bestMillis = millis[0];
+                    best = candidate;
+                }
+            }
+        } catch (RuntimeException e) {  // Without a CPU reference nothing can be checked, stay with the default
+            report.append("reference failed, ").append(e.getMessage()).append('\n');
+        } finally {
+            release(reference);
+        }
+        if (best == null) {
+            best = DEFAULT;
+        }
+        best.apply(net);
+        report.append("best: ").append(best).append('\n');
+        return best;
+    }
+
+    /**
+     * The input blob of a net for a recorded frame, or for random pixels if there is no recording
+     *
+     * @param frame the recorded 8 bit 3 channel frame, may be null
+     */
+    static Mat inputBlob(Mat frame, NetworkDescriptor descriptor) {
+        Mat image = frame;
+        if (image == null || image.empty()) {
+            image = new Mat(descriptor.inputHeight, descriptor.inputWidth, CvType.CV_8UC3);
+            Core.randu(image, 0, 256);
+        }
+        Mat blob = Dnn.blobFromImage(image, 0.00392, new Size(descriptor.inputWidth, descriptor.inputHeight),
+                new Scalar(0, 0, 0), false, false);
+        if (image != frame) {
+            image.release();
+        }
+        return blob;
+    }
+
+    /**
+     * One line per measured candidate, the times or why it failed
+     */
+    String getReport() {
+        return report.toString();
+    }
+
+    /**
+     * The fastest of {@code runs} forward passes in milliseconds, wall clock and the layer times of the same pass
+     *
+     * @param outputs receives the outputs of the last pass
+     */
+    private double[] measure(Net net, Config config, Mat input, List<String> outputNames, List<Mat> outputs) {
+        config.apply(net);
+        MatOfDouble layerTimes = new MatOfDouble();
+        double tickMillis = 1000.0 / Core.getTickFrequency();
+        double[] best = {Double.MAX_VALUE, 0};
+        try {
+            for (int run = 0; run <= runs; run++) {   // The first pass sets the backend up and isn't counted
+                release(outputs);
+                long start = System.nanoTime();
+                net.setInput(input);
+                net.forward(outputs, outputNames);
+                double millis = (System.nanoTime() - start) / 1e6;
+                if (run > 0 && millis < best[0]) {
+                    best[0] = millis;
+                    best[1] = net.getPerfProfile(layerTimes) * tickMillis;
+                }
+            }
+        } finally {
+            layerTimes.release();
+        }
+        return best;
+    }
+
+    /**
+     * The largest absolute difference of any value of the outputs, infinite if their shapes don't match
+     */
+    private static double maxDifference(List<Mat> reference, List<Mat> outputs) {
+        if (reference.size() != outputs.size()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double max = 0;
+        for (int i = 0; i < reference.size(); i++) {
+            Mat expected = reference.get(i);
+            Mat actual = outputs.get(i);
+            if (expected.total() != actual.total() || expected.type() != actual.type()) {
+                return Double.POSITIVE_INFINITY;
+            }
+            if (!Core.checkRange(actual)) {     // NaN or infinite values
+                return Double.NaN;
+            }
+            max = Math.max(max, Core.norm(expected, actual, Core.NORM_INF));
+        }
+        return max;
+    }
+
+    private static void release(List<Mat> mats) {
+        for (Mat mat : mats) {
+            mat.release();
+        }
+        mats.clear();
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************
+ * @file FrameContext.java
+ *
+ * @brief Per frame state that is handed from one pipeline stage to the next
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import android.graphics.Bitmap;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything one camera frame needs on its way through the {@link FramePipeline}.
+ * A context is only touched by one stage at a time, the queues between the stages take care of the visibility
+ * of the fields so nothing in here has to be synchronized.
+ */
+class FrameContext {
+
+    final long frameNumber;
+    final long receivedNanos;
+
+    // Camera input, the processed images are written back into these bitmaps by the render stage
+    final Bitmap msxBitmap;
+    final Bitmap dcBitmap;
+
+    // Settings are read once when the frame arrives so all stages of a frame work with the same values
+    final float confThreshold;
+    final boolean tracking;     // Yolo only runs on key frames, the boxes are tracked in between
+
+    // Ingest / align and fuse
+    Mat frameRGB;
+    Mat frameThermal;
+    Mat combinedMat;
+
+    // Detect, the outputs stay empty if the frame isn't a key frame
+    boolean detected = true;
+    List<Rect> tiles = null;    // The tiles that were detected as one batch, null if the whole frame was the input
+    List<Mat> yoloOutputs = new ArrayList<>(2);
+
+    // Postprocess, all candidates above the threshold and the indices of the ones that survive NMS
+    final Detections detections = new Detections();
+    int[] keptIndices = new int[0];
+    int[] trackIds = null;      // The track of each kept box in tracking mode
+    boolean reused = false;     // The scene didn't change, the boxes are the ones of the frame before
+
+    // Classify
+    List<Mat> bgrThermal;
+    List<Mat> bgrSegm;
+    Mat destination;
+
+    // Buffers taken from the MatPool for this frame, all of them are given back in releaseBuffers()
+    private final List<Mat> buffers = new ArrayList<>();
+
+    FrameContext(long frameNumber, Bitmap msxBitmap, Bitmap dcBitmap, float confThreshold, boolean tracking) {
+        this.frameNumber = frameNumber;
+        this.receivedNanos = System.nanoTime();
+        this.msxBitmap = msxBitmap;
+        this.dcBitmap = dcBitmap;
+        this.confThreshold = confThreshold;
+        this.tracking = tracking;
+    }
+
+    /**
+     * Take a buffer from the pool that belongs to this frame until {@link #releaseBuffers(MatPool)} is called
+     */
+    Mat acquire(MatPool pool, int rows, int cols, int type) {
+        Mat mat = pool.acquire(rows, cols, type);
+        buffers.add(mat);
+        return mat;
+    }
+
+    /**
+     * Give all buffers of the frame back to the pool and free the yolo outputs, called once the frame was
+     * written to the bitmaps or when it failed
+     */
+    void releaseBuffers(MatPool pool) {
+        for (Mat mat : buffers) {
+            pool.release(mat);
+        }
+        buffers.clear();
+        for (Mat mat : yoloOutputs) {
+            mat.release();
+        }
+        yoloOutputs.clear();
+    }
+}
@@ -0,0 +1,31 @@
+/*******************************************************************
+ * @file FrameCounters.java
+ *
+ * @brief Counters for dropped, processed and displayed frames
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared by the admission queues, the pipeline and the ui, safe to update and read from any thread.
+ * Every frame that enters is eventually either dropped or displayed.
+ */
+class FrameCounters {
+    final AtomicLong dropped = new AtomicLong();
+    final AtomicLong processed = new AtomicLong();
+    final AtomicLong displayed = new AtomicLong();
+    // Time from the frame arriving from the camera until it was handed to the view
+    final AtomicLong lastLatencyNanos = new AtomicLong();
+
+    void onDisplayed(long receivedNanos) {
+        displayed.incrementAndGet();
+        lastLatencyNanos.set(System.nanoTime() - receivedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "processed=" + processed.get() + " displayed=" + displayed.get() + " dropped=" + dropped.get()
+                + " latency=" + lastLatencyNanos.get() / 1000000 + "ms";
+    }
+}
@@ -0,0 +1,256 @@
+/*******************************************************************
+ * @file FramePipeline.java
+ *
+ * @brief Staged, multi-threaded processing of camera frames
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs frames through an ordered list of stages, every stage on its own single thread executor.
+ * Stages are connected by bounded queues so that stage N can work on frame K while stage N+1
+ * is still busy with frame K-1, the throughput is then limited by the slowest stage instead of
+ * the sum of all of them.
+ * <p/>
+ * The class only depends on the JDK so it can be driven headless on a normal JVM, for example with
+ * a {@link SyntheticFrameSource}, to measure the stage throughput without a camera.
+ * <p/>
+ * Usage:
+ * <pre>
+ * FramePipeline&lt;FrameContext&gt; pipeline = new FramePipeline&lt;&gt;(2)
+ *         .addStage("ingest", ingest)
+ *         .addStage("detect", detect);
+ * pipeline.start(sink);
+ * pipeline.submit(frame);
+ * </pre>
+ */
+class FramePipeline<T> {
+
+    /**
+     * One step of the pipeline, called on the stage's own thread
+     */
+    interface Stage<T> {
+        void process(T frame) throws Exception;
+    }
+
+    /**
+     * Receives every frame that went through all stages, frames that failed in one of them, frames
+     * that were dropped by the admission policy before entering the first stage and frames discarded by stop()
+     */
+    interface Sink<T> {
+        void onFrame(T frame);
+
+        void onError(String stageName, T frame, Exception e);
+
+        void onDropped(T frame);
+    }
+
+    /**
+     * Counters of a single stage, safe to read from any thread
+     */
+    static final class StageStats {
+        final String name;
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Average time spent in the stage per frame in milliseconds
+         */
+        double averageMillis() {
+            long count = processed.get() + failed.get();
+            return count == 0 ? 0 : busyNanos.get() / 1000000.0 / count;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": processed=" + processed.get() + " failed=" + failed.get() + " avg=" + String.format("%.2f", averageMillis()) + "ms";
+        }
+    }
+
+    private final int queueCapacity;
+    private final FrameCounters counters = new FrameCounters();
+    private final FrameQueue<T> admission;
+    private final List<String> names = new ArrayList<>();
+    private final List<Stage<T>> stages = new ArrayList<>();
+    private final List<StageStats> stats = new ArrayList<>();
+    private final List<BlockingQueue<T>> queues = new ArrayList<>(); // In front of the second stage onwards
+    private final List<ExecutorService> executors = new ArrayList<>();
+    private volatile boolean running = false;
+    private Sink<T> sink;
+
+    /**
+     * A pipeline where {@link #submit(Object)} blocks while the first stage is busy
+     *
+     * @param queueCapacity the number of frames that can wait in front of each stage
+     */
+    FramePipeline(int queueCapacity) {
+        this(queueCapacity, FrameQueue.Policy.BLOCK, queueCapacity);
+    }
+
+    /**
+     * @param queueCapacity      the number of frames that can wait in front of each stage after the first one
+     * @param admissionPolicy    what happens with new frames while the first stage is busy
+     * @param admissionCapacity  the number of frames that can wait in front of the first stage
+     */
+    FramePipeline(int queueCapacity, FrameQueue.Policy admissionPolicy, int admissionCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1, was " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        this.admission = new FrameQueue<>(admissionPolicy, admissionCapacity, counters);
+        this.admission.setDropListener(frame -> sink.onDropped(frame));
+    }
+
+    /**
+     * Append a stage, the stages run in the order they are added
+     */
+    FramePipeline<T> addStage(String name, Stage<T> stage) {
+        if (running) {
+            throw new IllegalStateException("Stages can't be added to a running pipeline");
+        }
+        names.add(name);
+        stages.add(stage);
+        stats.add(new StageStats(name));
+        return this;
+    }
+
+    /**
+     * Start one worker thread per stage
+     */
+    synchronized void start(Sink<T> sink) {
+        if (running) {
+            return;
+        }
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("The pipeline has no stages");
+        }
+        this.sink = sink;
+        queues.clear();
+        for (int i = 1; i < stages.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        running = true;
+        for (int i = 0; i < stages.size(); i++) {
+            final int index = i;
+            final String threadName = "pipeline-" + names.get(i);
+            ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, threadName));
+            executor.execute(() -> runStage(index));
+            executors.add(executor);
+        }
+    }
+
+    /**
+     * Stop all stages, frames that are still queued or in a stage are handed to {@link Sink#onDropped(Object)}
+     */
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+        for (ExecutorService executor : executors) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        executors.clear();
+        admission.clear();
+        for (BlockingQueue<T> queue : queues) {
+            T frame;
+            while ((frame = queue.poll()) != null) {
+                counters.dropped.incrementAndGet();
+                sink.onDropped(frame);
+            }
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Hand a new frame to the first stage, only blocks with the {@link FrameQueue.Policy#BLOCK} admission policy
+     *
+     * @return false if the pipeline isn't running or the admission policy dropped the frame
+     */
+    boolean submit(T frame) throws InterruptedException {
+        if (!running) {
+            return false;
+        }
+        return admission.offer(frame);
+    }
+
+    /**
+     * Dropped and processed frames of this pipeline, the owner of the view adds the displayed ones
+     */
+    FrameCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Per stage counters, in stage order
+     */
+    List<StageStats> getStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    private void runStage(int index) {
+        Stage<T> stage = stages.get(index);
+        StageStats stageStats = stats.get(index);
+        BlockingQueue<T> input = index > 0 ? queues.get(index - 1) : null;
+        BlockingQueue<T> output = index < queues.size() ? queues.get(index) : null;
+        T frame = null;     // The frame this stage holds, handed to the sink as dropped if stop() interrupts it
+        try {
+            while (running) {
+                frame = input != null ? input.take() : admission.take();
+                long start = System.nanoTime();
+                try {
+                    stage.process(frame);
+                    stageStats.busyNanos.addAndGet(System.nanoTime() - start);
+                    stageStats.processed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    stageStats.busyNanos.addAndGet(System.nanoTime() - start);
+                    stageStats.failed.incrementAndGet();
+                    counters.dropped.incrementAndGet();
+                    sink.onError(names.get(index), frame, e);
+                    frame = null;
+                    continue;
+                }
+                if (output != null) {
+                    output.put(frame);
+                } else {
+                    counters.processed.incrementAndGet();
+                    sink.onFrame(frame);
+                }
+                frame = null;
+            }
+        } catch (InterruptedException e) {
+            //stop() was called while waiting for a frame, processing one or handing it to the next stage
+            if (frame != null) {
+                counters.dropped.incrementAndGet();
+                sink.onDropped(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************
+ * @file FrameQueue.java
+ *
+ * @brief Bounded frame queue with a configurable admission policy
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decides what happens with a new frame when the consumer can't keep up with the camera.
+ * With any policy but {@link Policy#BLOCK} {@link #offer(Object)} never blocks, so the Thermal SDK thread is never stalled
+ * and the frames waiting in the queue are never older than the capacity of the queue.
+ */
+class FrameQueue<T> {
+
+    enum Policy {
+        /**
+         * Wait until there is room, the camera thread stalls when the consumer is slower
+         */
+        BLOCK,
+        /**
+         * Throw away the frame that waited the longest to make room for the new one
+         */
+        DROP_OLDEST,
+        /**
+         * Throw away the new frame when the queue is full
+         */
+        DROP_NEWEST,
+        /**
+         * A single slot, a new frame always replaces the one that wasn't picked up yet
+         */
+        LATEST_WINS
+    }
+
+    /**
+     * Notified about every frame the queue throws away, e.g. to give its buffers back
+     */
+    interface DropListener<T> {
+        void onDropped(T frame);
+    }
+
+    private final Policy policy;
+    private final BlockingQueue<T> queue;
+    private final FrameCounters counters;
+    private DropListener<T> dropListener;
+
+    /**
+     * @param capacity ignored for {@link Policy#LATEST_WINS} which always holds one frame
+     * @param counters the dropped frames are added to these counters
+     */
+    FrameQueue(Policy policy, int capacity, FrameCounters counters) {
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(policy == Policy.LATEST_WINS ? 1 : capacity);
+        this.counters = counters;
+    }
+
+    void setDropListener(DropListener<T> dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Add a frame according to the policy
+     *
+     * @return false if the new frame itself was dropped
+     */
+    boolean offer(T frame) throws InterruptedException {
+        switch (policy) {
+            case BLOCK:
+                queue.put(frame);
+                return true;
+            case DROP_NEWEST:
+                if (queue.offer(frame)) {
+                    return true;
+                }
+                dropped(frame);
+                return false;
+            case DROP_OLDEST:
+            case LATEST_WINS:
+            default:
+                while (!queue.offer(frame)) {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        dropped(oldest);
+                    }
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Wait for the next frame
+     */
+    T take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * The next frame or null if there is none
+     */
+    T poll() {
+        return queue.poll();
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Remove all waiting frames, they count as dropped
+     */
+    void clear() {
+        T frame;
+        while ((frame = queue.poll()) != null) {
+            dropped(frame);
+        }
+    }
+
+    private void dropped(T frame) {
+        counters.dropped.incrementAndGet();
+        if (dropListener != null) {
+            dropListener.onDropped(frame);
+        }
+    }
+}
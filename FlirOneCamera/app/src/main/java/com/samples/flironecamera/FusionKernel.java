@@ -0,0 +1,98 @@
+/*******************************************************************
+ * @file FusionKernel.java
+ *
+ * @brief Builds the 3 channel yolo input from the rgb and thermal image in one pass
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * The yolo input is (gray(thermal), 0.33 R + 0.66 G, 0.33 R + 0.66 B). The old code built it with split, two clones,
+ * two addWeighted, a gray conversion and a merge, about eight passes over the frame. This kernel reads both images
+ * once and writes the fused image once.
+ * <p/>
+ * To stay bit-exact with the OpenCV path the weighted sums come from a 256x256 table that is filled by
+ * {@code Core.addWeighted} itself, and the gray value uses the fixed point coefficients of {@code COLOR_RGB2GRAY}.
+ * {@code FusionKernelTest} compares the output byte for byte with the old implementation.
+ * <p/>
+ * {@link #fuse(Mat, Mat, Mat)} keeps its scratch arrays, it must only be called from one thread at a time.
+ * The fused image is turned into the network input by the {@link BlobPreprocessor}.
+ */
+class FusionKernel {
+
+    // cvtColor RGB2GRAY for 8 bit images in OpenCV 4: (R * 9798 + G * 19235 + B * 3735 + 2^14) >> 15
+    private static final int GRAY_SHIFT = 15;
+    private static final int R2Y = 9798;
+    private static final int G2Y = 19235;
+    private static final int B2Y = 3735;
+
+    private final byte[] weighted = new byte[256 * 256]; // saturate(0.33 * r + 0.66 * c) at [r * 256 + c]
+    private volatile boolean tableReady = false;
+    private byte[] rgbBytes = new byte[0];
+    private byte[] thermalBytes = new byte[0];
+    private byte[] fusedBytes = new byte[0];
+
+    /**
+     * Fill the weighted sum table, done on first use because OpenCV isn't loaded yet when the kernel is created
+     */
+    private synchronized void ensureTable() {
+        if (tableReady) {
+            return;
+        }
+        Mat red = new Mat(256, 256, CvType.CV_8UC1);
+        Mat other = new Mat(256, 256, CvType.CV_8UC1);
+        byte[] reds = new byte[256 * 256];
+        byte[] others = new byte[256 * 256];
+        for (int r = 0; r < 256; r++) {
+            for (int c = 0; c < 256; c++) {
+                reds[r * 256 + c] = (byte) r;
+                others[r * 256 + c] = (byte) c;
+            }
+        }
+        red.put(0, 0, reds);
+        other.put(0, 0, others);
+        Mat result = new Mat();
+        Core.addWeighted(red, 0.33, other, 0.66, 0, result);
+        result.get(0, 0, weighted);
+        red.release();
+        other.release();
+        result.release();
+        tableReady = true;
+    }
+
+    /**
+     * Write the fused yolo input into {@code dst}, all three Mats are CV_8UC3 of the same size
+     *
+     * @param rgb     the camera image in R, G, B order
+     * @param thermal the aligned thermal image, converted to gray as if it was in R, G, B order like the old code did
+     */
+    void fuse(Mat rgb, Mat thermal, Mat dst) {
+        ensureTable();
+        int length = (int) (rgb.total() * 3);
+        if (rgbBytes.length != length) {
+            rgbBytes = new byte[length];
+            thermalBytes = new byte[length];
+            fusedBytes = new byte[length];
+        }
+        continuous(rgb).get(0, 0, rgbBytes);
+        continuous(thermal).get(0, 0, thermalBytes);
+        byte[] rgbIn = rgbBytes;
+        byte[] thermalIn = thermalBytes;
+        byte[] out = fusedBytes;
+        byte[] table = weighted;
+        for (int i = 0; i < length; i += 3) {
+            int row = (rgbIn[i] & 0xFF) << 8;
+            out[i] = (byte) (((thermalIn[i] & 0xFF) * R2Y + (thermalIn[i + 1] & 0xFF) * G2Y + (thermalIn[i + 2] & 0xFF) * B2Y + (1 << (GRAY_SHIFT - 1))) >> GRAY_SHIFT);
+            out[i + 1] = table[row | (rgbIn[i + 1] & 0xFF)];
+            out[i + 2] = table[row | (rgbIn[i + 2] & 0xFF)];
+        }
+        dst.put(0, 0, out);
+    }
+
+    private static Mat continuous(Mat mat) {
+        return mat.isContinuous() ? mat : mat.clone();
+    }
+}
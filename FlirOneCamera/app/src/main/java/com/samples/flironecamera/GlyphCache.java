@@ -0,0 +1,101 @@
+/*******************************************************************
+ * @file GlyphCache.java
+ *
+ * @brief Label strings rasterized once and blended into the overlay from then on
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The labels only use a few fixed strings ("Device:", the class names, "Tracking:", ...), so each of them is drawn
+ * with {@code Imgproc.putText} once into a small sprite and the sprite is blended into the {@link OverlayLayer}
+ * after that. {@code putText} without anti aliasing only sets pixels, so the result is the same as drawing the text.
+ * <p/>
+ * The cache is emptied when it holds more than {@code maxEntries} strings, which only happens if the labels start
+ * to contain changing text. Only used by the render thread.
+ */
+class GlyphCache {
+
+    private static final Scalar BLACK = new Scalar(0, 0, 0);
+    private static final Scalar WHITE = new Scalar(255, 255, 255);
+
+    /**
+     * A rasterized string, {@code keep} is 0 where the text is and 255 around it
+     */
+    private static final class Glyphs {
+        final Mat color;
+        final Mat keep;
+        final int originX;  // Position of the putText origin inside the sprite
+        final int originY;
+
+        Glyphs(Mat color, Mat keep, int originX, int originY) {
+            this.color = color;
+            this.keep = keep;
+            this.originX = originX;
+            this.originY = originY;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<String, Glyphs> cache = new HashMap<>();
+
+    GlyphCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Draw opaque text into the overlay, same arguments as {@code Imgproc.putText}
+     */
+    void putText(OverlayLayer layer, String text, Point origin, int fontFace, double fontScale, Scalar rgb, int thickness) {
+        Glyphs glyphs = get(text, fontFace, fontScale, rgb, thickness);
+        layer.blend((int) origin.x - glyphs.originX, (int) origin.y - glyphs.originY, glyphs.color, glyphs.keep);
+    }
+
+    void clear() {
+        for (Glyphs glyphs : cache.values()) {
+            glyphs.color.release();
+            glyphs.keep.release();
+        }
+        cache.clear();
+    }
+
+    private Glyphs get(String text, int fontFace, double fontScale, Scalar rgb, int thickness) {
+        String key = fontFace + "|" + fontScale + "|" + thickness + "|" + rgb + "|" + text;
+        Glyphs glyphs = cache.get(key);
+        if (glyphs != null) {
+            return glyphs;
+        }
+        if (cache.size() >= maxEntries) {
+            clear();
+        }
+        int[] baseline = new int[1];
+        Size size = Imgproc.getTextSize(text, fontFace, fontScale, thickness, baseline);
+        int originX = thickness;
+        int originY = (int) size.height + thickness;
+        int rows = originY + baseline[0] + thickness + 1;
+        int cols = (int) size.width + 2 * thickness + 1;
+        Point origin = new Point(originX, originY);
+
+        Mat color = new Mat(rows, cols, CvType.CV_8UC3, BLACK);
+        Imgproc.putText(color, text, origin, fontFace, fontScale, rgb, thickness);
+        Mat mask = new Mat(rows, cols, CvType.CV_8UC3, BLACK);
+        Imgproc.putText(mask, text, origin, fontFace, fontScale, WHITE, thickness);
+        Mat keep = new Mat();
+        Core.bitwise_not(mask, keep);
+        mask.release();
+
+        glyphs = new Glyphs(color, keep, originX, originY);
+        cache.put(key, glyphs);
+        return glyphs;
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************
+ * @file GrayTensorWriter.java
+ *
+ * @brief Writes an 8 bit, 3 channel image as normalized gray floats into a tensor buffer
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * The on/off model takes the mean of the three channels, each divided by 255, as input. The old code read it with
+ * three {@code Mat.get(k, l)} calls per pixel, which are JNI calls that each allocate a {@code double[]}.
+ * This writer copies the image with one {@code Mat.get(0, 0, byte[])} into a reused array, converts it with a
+ * 256 entry table and writes all floats into the tensor buffer at once.
+ * <p/>
+ * The values are the same as the old loop: {@code ((c0 / 255 + c1 / 255) + c2 / 255) / 3} in float arithmetic,
+ * {@code GrayTensorWriterTest} checks that bit for bit. Not thread safe.
+ */
+class GrayTensorWriter {
+
+    private static final float[] NORMALIZED = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            NORMALIZED[i] = (float) (((float) i) / 255.0);
+        }
+    }
+
+    private byte[] pixels = new byte[0];
+    private float[] values = new float[0];
+
+    /**
+     * Append the gray values of {@code image} to {@code tensor} at its position and advance the position
+     *
+     * @param image  CV_8UC3 image, usually a pooled buffer the crop was resized into
+     * @param tensor a native order buffer with at least {@code 4 * image.total()} bytes remaining
+     */
+    void write(Mat image, ByteBuffer tensor) {
+        int area = (int) image.total();
+        if (pixels.length != area * 3) {
+            pixels = new byte[area * 3];
+        }
+        Mat continuous = image.isContinuous() ? image : image.clone();
+        continuous.get(0, 0, pixels);
+        if (continuous != image) {
+            continuous.release();
+        }
+        write(pixels, area, tensor);
+    }
+
+    /**
+     * Same as {@link #write(Mat, ByteBuffer)} for pixels that were already copied out of the image
+     *
+     * @param pixels the 3 channel pixels in row major order, at least {@code 3 * area} bytes
+     */
+    void write(byte[] pixels, int area, ByteBuffer tensor) {
+        if (values.length != area) {
+            values = new float[area];
+        }
+        float[] out = values;
+        float[] table = NORMALIZED;
+        for (int p = 0, i = 0; p < area; p++, i += 3) {
+            out[p] = (table[pixels[i] & 0xFF] + table[pixels[i + 1] & 0xFF] + table[pixels[i + 2] & 0xFF]) / 3;
+        }
+        FloatBuffer floats = tensor.asFloatBuffer();
+        floats.put(out, 0, area);
+        tensor.position(tensor.position() + area * 4);
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************
+ * @file MatPool.java
+ *
+ * @brief Pool of reusable Mat buffers keyed by size and type
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out pre-sized {@link Mat}s so the per frame processing doesn't allocate native memory once the pool is warm.
+ * Buffers are taken with {@link FrameContext#acquire(MatPool, int, int, int)} and all of them are given back together
+ * when the frame is finished, see {@link FrameContext#releaseBuffers(MatPool)}.
+ * <p/>
+ * A Mat is filed under the size and type it has when it is released, so an OpenCV function that reallocated its
+ * output doesn't end up in the wrong bucket. Thread safe, the pipeline stages acquire and release from different threads.
+ */
+class MatPool {
+
+    private final Map<Long, ArrayDeque<Mat>> free = new HashMap<>();
+    private final int maxPerKey;
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxPerKey the number of idle buffers kept for each size and type, extra ones are released
+     */
+    MatPool(int maxPerKey) {
+        this.maxPerKey = maxPerKey;
+    }
+
+    /**
+     * A Mat with the given size and type, the content is undefined
+     */
+    Mat acquire(int rows, int cols, int type) {
+        synchronized (this) {
+            ArrayDeque<Mat> bucket = free.get(key(rows, cols, type));
+            if (bucket != null && !bucket.isEmpty()) {
+                hits.incrementAndGet();
+                return bucket.pop();
+            }
+        }
+        misses.incrementAndGet();
+        return new Mat(rows, cols, type);
+    }
+
+    /**
+     * Give a buffer back, it must not be used by the caller afterwards
+     */
+    void release(Mat mat) {
+        if (mat.empty() || mat.isSubmatrix()) {
+            mat.release();
+            return;
+        }
+        long key = key(mat.rows(), mat.cols(), mat.type());
+        synchronized (this) {
+            ArrayDeque<Mat> bucket = free.get(key);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                free.put(key, bucket);
+            }
+            if (bucket.size() < maxPerKey) {
+                bucket.push(mat);
+                return;
+            }
+        }
+        mat.release();
+    }
+
+    /**
+     * Release the native memory of all idle buffers
+     */
+    synchronized void clear() {
+        for (ArrayDeque<Mat> bucket : free.values()) {
+            for (Mat mat : bucket) {
+                mat.release();
+            }
+        }
+        free.clear();
+    }
+
+    private static long key(int rows, int cols, int type) {
+        return ((long) rows << 40) | ((long) cols << 16) | (type & 0xFFFF);
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits.get() + " misses=" + misses.get();
+    }
+}
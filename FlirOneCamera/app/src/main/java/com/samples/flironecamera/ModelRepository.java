@@ -0,0 +1,143 @@
+/*******************************************************************
+ * @file ModelRepository.java
+ *
+ * @brief Builds the nets from memory mapped model files
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code Dnn.readNetFromDarknet(String, String)} reads both files into memory for every net. Here the files are
+ * memory mapped and wrapped in a {@link MatOfByte} without copying, so the two ~35MB weight files are never on the
+ * Java heap, and the nets are built with {@code readNetFromDarknet(MatOfByte, MatOfByte)}.
+ * The cfg is mapped once and shared by all nets that use it.
+ * <p/>
+ * Every load logs its time and the Java heap in use before and after, the largest heap seen is kept in
+ * {@link #getPeakHeapBytes()}. Safe to use from several loader threads.
+ */
+class ModelRepository {
+
+    private static final String TAG = "ModelRepository";
+
+    private final File directory;
+    private final Map<String, MatOfByte> mapped = new HashMap<>();  // Files that are shared between nets, e.g. the cfg
+    private final Map<String, ByteBuffer> buffers = new HashMap<>(); // Keeps the mappings of the shared files alive
+    private long peakHeapBytes = 0;
+
+    /**
+     * @param directory where the cfg and weight files are
+     */
+    ModelRepository(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Build a darknet net from a cfg that is shared with other nets and a weight file that is only mapped while
+     * the net is built
+     */
+    Net readDarknet(String cfgName, String weightsName) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        long heapBefore = usedHeap();
+        MatOfByte cfg = shared(cfgName);
+        MappedByteBuffer weightsBuffer = map(new File(directory, weightsName));
+        Mat weightsMat = wrap(weightsBuffer);
+        MatOfByte weights = new MatOfByte(weightsMat);
+        Net net = Dnn.readNetFromDarknet(cfg, weights);
+        weights.release();
+        weightsMat.release();
+        if (net.empty()) {
+            throw new IOException("Could not build a net from " + cfgName + " and " + weightsName);
+        }
+        long heapAfter = usedHeap();
+        Log.d(TAG, weightsName + " (" + (weightsBuffer.capacity() >> 10) + " KB) loaded in " + (SystemClock.elapsedRealtime() - start)
+                + " ms, java heap " + (heapBefore >> 10) + " KB -> " + (heapAfter >> 10) + " KB");
+        return net;
+    }
+
+    /**
+     * Map a file from the assets, it has to be stored uncompressed in the apk
+     */
+    static ByteBuffer mapAsset(AssetManager assets, String name) throws IOException {
+        AssetFileDescriptor fileDescriptor = assets.openFd(name);
+        try (FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            long startOffset = fileDescriptor.getStartOffset();
+            long declaredLength = fileDescriptor.getDeclaredLength();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+        }
+    }
+
+    /**
+     * The largest Java heap use seen by the loads so far
+     */
+    synchronized long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * Unmap the shared files once all nets are built
+     */
+    synchronized void clear() {
+        for (MatOfByte mat : mapped.values()) {
+            mat.release();
+        }
+        mapped.clear();
+        buffers.clear();
+    }
+
+    private synchronized MatOfByte shared(String name) throws IOException {
+        MatOfByte mat = mapped.get(name);
+        if (mat == null) {
+            MappedByteBuffer buffer = map(new File(directory, name));
+            Mat wrapped = wrap(buffer);
+            mat = new MatOfByte(wrapped);
+            wrapped.release();
+            mapped.put(name, mat);
+            buffers.put(name, buffer);
+        }
+        return mat;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // The mapping stays valid after the channel is closed
+        }
+    }
+
+    /**
+     * A 1xN byte Mat that points to the mapped memory, nothing is copied
+     */
+    private static Mat wrap(ByteBuffer buffer) {
+        return new Mat(1, buffer.capacity(), CvType.CV_8UC1, buffer);
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        synchronized (this) {
+            peakHeapBytes = Math.max(peakHeapBytes, used);
+        }
+        return used;
+    }
+}
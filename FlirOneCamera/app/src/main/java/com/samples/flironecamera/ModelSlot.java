@@ -0,0 +1,71 @@
+/*******************************************************************
+ * @file ModelSlot.java
+ *
+ * @brief The selected model variant, safely shared between the ui and the inference threads
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds one loaded and warmed up instance of every variant of a model (e.g. the regular and the panic mode yolo) and
+ * which of them is active. The instances are published with a volatile write once they are loaded and the active
+ * variant is an atomic, so a switch on the ui thread is seen by the inference thread on its next frame and the
+ * new variant doesn't run its first inference cold.
+ *
+ * @param <T> the model type
+ */
+class ModelSlot<T> {
+
+    private final String name;
+    private final int variants;
+    private final AtomicInteger active = new AtomicInteger(0);
+    private volatile List<T> instances = null;
+
+    ModelSlot(String name, int variants) {
+        this.name = name;
+        this.variants = variants;
+    }
+
+    /**
+     * Make the loaded instances visible to all threads, one per variant
+     */
+    void publish(List<T> loaded) {
+        if (loaded.size() != variants) {
+            throw new IllegalArgumentException(name + " has " + variants + " variants but " + loaded.size() + " instances were given");
+        }
+        instances = Collections.unmodifiableList(new ArrayList<>(loaded));
+    }
+
+    /**
+     * The shared instance of the active variant, null until {@link #publish(List)} was called.
+     * Must only be used by one thread at a time.
+     */
+    T get() {
+        List<T> loaded = instances;
+        return loaded == null ? null : loaded.get(active.get());
+    }
+
+    /**
+     * Activate the next variant
+     *
+     * @return the variant that is active now
+     */
+    int next() {
+        int current;
+        int next;
+        do {
+            current = active.get();
+            next = (current + 1) % variants;
+        } while (!active.compareAndSet(current, next));
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return name + " variant " + active.get() + "/" + variants + (instances != null ? "" : " (not loaded)");
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************
+ * @file NetworkDescriptor.java
+ *
+ * @brief Input size, classes and output layers of a darknet yolo network
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the pipeline needs to know about a yolo network, read once when the network is loaded instead of being
+ * hard coded in the per frame code. The input size, the channels and the classes come from the darknet cfg, the names
+ * of the output layers from {@code Net.getUnconnectedOutLayersNames()}, so a cfg with a different input size,
+ * number of classes or number of yolo heads works without code changes: the blob is built with the input size, the
+ * output rows are decoded with the number of classes and the on/off labels follow the yolo classes.
+ * The anchors and masks of the {@code [yolo]} sections are not kept, OpenCV applies them inside the region layers.
+ * <p/>
+ * Immutable, parsing doesn't need OpenCV.
+ */
+final class NetworkDescriptor {
+
+    final int inputWidth;
+    final int inputHeight;
+    final int channels;
+    final int classes;      // The same in every [yolo] section, each output row has 5 + classes values
+    final List<String> outputNames;
+
+    private NetworkDescriptor(int inputWidth, int inputHeight, int channels, int classes, List<String> outputNames) {
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.channels = channels;
+        this.classes = classes;
+        this.outputNames = Collections.unmodifiableList(new ArrayList<>(outputNames));
+    }
+
+    /**
+     * Read a darknet cfg, the reader is closed afterwards
+     *
+     * @param outputNames the output layers of the network built from the cfg
+     * @throws IOException if the cfg can't be read, has no {@code [net]} size, no {@code [yolo]} section or
+     *                     {@code [yolo]} sections with different classes
+     */
+    static NetworkDescriptor parse(Reader cfg, List<String> outputNames) throws IOException {
+        int width = -1;
+        int height = -1;
+        int channels = 3;
+        int heads = 0;
+        int classes = -1;
+        String section = "";
+        int sectionClasses = -1;
+        try (BufferedReader reader = new BufferedReader(cfg)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                line = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("[")) {
+                    if (section.equals("[yolo]")) {
+                        classes = headClasses(classes, sectionClasses);
+                        heads++;
+                    }
+                    section = line;
+                    sectionClasses = -1;
+                    continue;
+                }
+                int equals = line.indexOf('=');
+                if (equals < 0) {
+                    continue;
+                }
+                String key = line.substring(0, equals).trim();
+                String value = line.substring(equals + 1).trim();
+                try {
+                    if (section.equals("[net]") || section.equals("[network]")) {
+                        if (key.equals("width")) width = Integer.parseInt(value);
+                        else if (key.equals("height")) height = Integer.parseInt(value);
+                        else if (key.equals("channels")) channels = Integer.parseInt(value);
+                    } else if (section.equals("[yolo]")) {
+                        if (key.equals("classes")) sectionClasses = Integer.parseInt(value);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid value for " + key + " in " + section + ": " + value);
+                }
+            }
+        }
+        if (section.equals("[yolo]")) {
+            classes = headClasses(classes, sectionClasses);
+            heads++;
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("The cfg has no input size in its [net] section");
+        }
+        if (heads == 0) {
+            throw new IOException("The cfg has no [yolo] section");
+        }
+        return new NetworkDescriptor(width, height, channels, classes, outputNames);
+    }
+
+    /**
+     * The same descriptor with the output layer names of a network that was built from the cfg
+     */
+    NetworkDescriptor withOutputNames(List<String> outputNames) {
+        return new NetworkDescriptor(inputWidth, inputHeight, channels, classes, outputNames);
+    }
+
+    @Override
+    public String toString() {
+        return inputWidth + "x" + inputHeight + "x" + channels + ", " + classes + " classes, outputs " + outputNames;
+    }
+
+    /**
+     * The classes of a {@code [yolo]} section, checked against the ones of the sections before
+     */
+    private static int headClasses(int classes, int sectionClasses) throws IOException {
+        if (sectionClasses <= 0) {
+            throw new IOException("A [yolo] section of the cfg has no classes");
+        }
+        if (classes > 0 && classes != sectionClasses) {
+            throw new IOException("The [yolo] sections of the cfg have " + classes + " and " + sectionClasses + " classes");
+        }
+        return sectionClasses;
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************
+ * @file NonMaxSuppression.java
+ *
+ * @brief Greedy, per class and soft non maximum suppression in plain Java
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+
+/**
+ * The same greedy algorithm as {@code Dnn.NMSBoxes}: boxes above the score threshold are visited from the highest
+ * to the lowest score (equal scores keep their order) and a box is kept if its intersection over union with every
+ * kept box is at most the nms threshold. The kept indices are returned in that visiting order. With a top K only the
+ * K highest scoring boxes are visited, like the {@code top_k} of {@code NMSBoxes}.
+ * <p/>
+ * Works directly on the primitive arrays of {@link Detections}: no {@code MatOfRect} / {@code MatOfFloat} conversion
+ * and no JNI call, and for the few dozen candidates of a frame that is faster than the native version, see
+ * {@code NmsBenchmark} in the benchmarks module. Doesn't need the OpenCV natives, so it can be run on recorded
+ * detections without a device.
+ */
+final class NonMaxSuppression {
+
+    static final int NO_TOP_K = 0;
+    static final float NMS_THRESHOLD = 0.2f;        // Intersection over union above which the app suppresses a box
+    static final float SOFT_NMS_SIGMA = 0.5f;       // Width of the Gaussian penalty of the app's Soft-NMS
+    static final float SOFT_NMS_MIN_SCORE = 0.25f;  // Lowered score at which the app's Soft-NMS drops a box
+
+    private NonMaxSuppression() {
+    }
+
+    /**
+     * Suppress overlapping boxes regardless of their class, like {@code Dnn.NMSBoxes}
+     *
+     * @param topK only the topK highest scores are visited, {@link #NO_TOP_K} for all
+     */
+    static int[] greedy(Detections detections, float scoreThreshold, float nmsThreshold, int topK) {
+        return suppress(detections, false, scoreThreshold, nmsThreshold, topK);
+    }
+
+    /**
+     * Only suppress boxes that overlap a kept box of the same class, so two different devices in front of
+     * each other are both kept
+     */
+    static int[] perClass(Detections detections, float scoreThreshold, float nmsThreshold, int topK) {
+        return suppress(detections, true, scoreThreshold, nmsThreshold, topK);
+    }
+
+    /**
+     * Gaussian Soft-NMS: instead of removing the boxes that overlap a kept box, their score is multiplied by
+     * {@code exp(-iou^2 / sigma)}, and a box is kept as long as its lowered score is still above {@code minScore}.
+     * Two devices that overlap a lot (a phone on a laptop) both survive with a lower score for the second one.
+     * The lowered scores are written back to the detections.
+     *
+     * @param perClass       only boxes of the same class lower each other's score
+     * @param scoreThreshold only boxes above it are candidates
+     * @param sigma          the larger, the more a box with a given overlap is lowered
+     * @param minScore       a box whose lowered score falls to it or below is dropped, independent of the score threshold
+     * @return the kept indices by decreasing lowered score
+     */
+    static int[] soft(Detections detections, boolean perClass, float scoreThreshold, float sigma, float minScore, int topK) {
+        int[] candidates = sortedAbove(detections, scoreThreshold, topK);
+        int count = candidates.length;
+        int[] kept = new int[count];
+        int keptCount = 0;
+        while (count > 0) {
+            int best = 0;
+            for (int c = 1; c < count; c++) {       // The first of equal scores wins, the order stays stable
+                if (detections.score(candidates[c]) > detections.score(candidates[best])) {
+                    best = c;
+                }
+            }
+            int chosen = candidates[best];
+            System.arraycopy(candidates, best + 1, candidates, best, count - best - 1);
+            count--;
+            kept[keptCount++] = chosen;
+            int remaining = 0;
+            for (int c = 0; c < count; c++) {
+                int other = candidates[c];
+                if (!perClass || detections.classId(other) == detections.classId(chosen)) {
+                    float iou = detections.overlap(chosen, other);
+                    detections.setScore(other, detections.score(other) * (float) Math.exp(-iou * iou / sigma));
+                    if (detections.score(other) <= minScore) {
+                        continue;
+                    }
+                }
+                candidates[remaining++] = other;
+            }
+            count = remaining;
+        }
+        return Arrays.copyOf(kept, keptCount);
+    }
+
+    /**
+     * Intersection over union of two boxes, 1 for two empty boxes like {@code cv::jaccardDistance}
+     */
+    static float overlap(Rect a, Rect b) {
+        return overlap(a.x, a.y, a.width, a.height, b.x, b.y, b.width, b.height);
+    }
+
+    static float overlap(int ax, int ay, int aWidth, int aHeight, int bx, int by, int bWidth, int bHeight) {
+        long areaA = (long) aWidth * aHeight;
+        long areaB = (long) bWidth * bHeight;
+        if (areaA + areaB <= 0) {
+            return 1;
+        }
+        int width = Math.min(ax + aWidth, bx + bWidth) - Math.max(ax, bx);
+        int height = Math.min(ay + aHeight, by + bHeight) - Math.max(ay, by);
+        double intersection = width <= 0 || height <= 0 ? 0 : (double) width * height;
+        return (float) (intersection / (areaA + areaB - intersection));
+    }
+
+    private static int[] suppress(Detections detections, boolean perClass, float scoreThreshold, float nmsThreshold, int topK) {
+        int[] sorted = sortedAbove(detections, scoreThreshold, topK);
+        int[] kept = new int[sorted.length];
+        int keptCount = 0;
+        for (int candidate : sorted) {
+            boolean keep = true;
+            for (int k = 0; k < keptCount && keep; k++) {
+                int other = kept[k];
+                if (perClass && detections.classId(other) != detections.classId(candidate)) {
+                    continue;
+                }
+                keep = detections.overlap(candidate, other) <= nmsThreshold;
+            }
+            if (keep) {
+                kept[keptCount++] = candidate;
+            }
+        }
+        return Arrays.copyOf(kept, keptCount);
+    }
+
+    /**
+     * The indices of the boxes above the threshold by decreasing score, equal scores in index order, at most topK
+     */
+    private static int[] sortedAbove(Detections detections, float scoreThreshold, int topK) {
+        int[] order = new int[detections.size()];
+        int count = 0;
+        for (int i = 0; i < detections.size(); i++) {
+            if (detections.score(i) > scoreThreshold) {
+                order[count++] = i;
+            }
+        }
+        sortByScore(detections, order, count);
+        if (topK > 0 && count > topK) {
+            count = topK;
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Stable merge sort of the first count indices by decreasing score, without boxing them
+     */
+    private static void sortByScore(Detections detections, int[] order, int count) {
+        int[] from = order;
+        int[] to = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int start = 0; start < count; start += 2 * width) {
+                int middle = Math.min(start + width, count);
+                int end = Math.min(start + 2 * width, count);
+                int left = start;
+                int right = middle;
+                for (int k = start; k < end; k++) {
+                    if (left < middle && (right >= end || detections.score(from[left]) >= detections.score(from[right]))) {
+                        to[k] = from[left++];
+                    } else {
+                        to[k] = from[right++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != order) {
+            System.arraycopy(from, 0, order, 0, count);
+        }
+    }
+}
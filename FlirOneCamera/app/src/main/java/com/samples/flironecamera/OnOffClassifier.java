@@ -0,0 +1,168 @@
+/*******************************************************************
+ * @file OnOffClassifier.java
+ *
+ * @brief Batched on/off prediction for all boxes of a frame
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the boxes of a frame with {@link #add(int, Mat)} and runs the on/off TFLite model once for all of them.
+ * The inputs of the model are the one-hot encoded yolo class (input 0, [N, classes of the cfg]) and the gray thermal
+ * crop (input 1, [N, 145, 152, 1]), the output is the probability that the device is on ([N, 1]).
+ * The batch dimension is resized to the number of boxes and the inputs are written into reused direct buffers.
+ * <p/>
+ * If the model doesn't accept a batch dimension other than 1 the boxes are run one by one with the same buffers.
+ * Not thread safe, used by the classify stage only.
+ */
+class OnOffClassifier {
+
+    private static final String TAG = "OnOffClassifier";
+    static final int INPUT_HEIGHT = 145;
+    static final int INPUT_WIDTH = 152;
+    private static final int IMAGE_BYTES = INPUT_HEIGHT * INPUT_WIDTH * 4;
+
+    private final Interpreter interpreter;
+    private final int classes;
+    private final int labelBytes;
+    private final GrayTensorWriter imageWriter = new GrayTensorWriter();
+    private ByteBuffer labels;
+    private ByteBuffer images = allocate(IMAGE_BYTES);
+    private ByteBuffer output = allocate(4);
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final Object[] inputs = new Object[2];
+    private float[] probabilities = new float[0];
+    private int count = 0;
+    private int batchSize = 1;          // The batch size the interpreter is currently resized to, -1 if unknown
+    private boolean batchSupported = true;
+
+    /**
+     * @param classes the classes of the yolo network, {@link NetworkDescriptor#classes}
+     */
+    OnOffClassifier(Interpreter interpreter, int classes) {
+        this.interpreter = interpreter;
+        this.classes = classes;
+        this.labelBytes = classes * 4;
+        this.labels = allocate(labelBytes);
+    }
+
+    /**
+     * Forget the boxes of the previous frame
+     */
+    void clear() {
+        count = 0;
+        labels.clear();
+        images.clear();
+    }
+
+    /**
+     * Queue a box for the next {@link #run()}
+     *
+     * @param classId    the device class predicted by yolo
+     * @param modelInput the thermal crop of the box, CV_8UC3 resized to 152x145
+     * @return the index of the box in the result of {@link #run()}
+     */
+    int add(int classId, Mat modelInput) {
+        ensureCapacity(count + 1);
+        for (int c = 0; c < classes; c++) {
+            labels.putFloat(c == classId ? 1 : 0);
+        }
+        imageWriter.write(modelInput, images);  // Bulk copy of the crop, averaged and normalized into the direct buffer
+        return count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Run the model for all queued boxes
+     *
+     * @return the probability that the device is on for the first {@link #size()} entries, one per box in the order
+     * they were added. The array is reused and overwritten by the next call.
+     */
+    float[] run() {
+        if (probabilities.length < count) {
+            probabilities = new float[Math.max(count, probabilities.length * 2)];
+        }
+        float[] result = probabilities;
+        if (count == 0) {
+            return result;
+        }
+        if (batchSupported) {
+            try {
+                resize(count);
+                invoke(0, count, result);
+                return result;
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                Log.w(TAG, "The on/off model doesn't support batches, running the boxes one by one: " + e);
+                batchSupported = false;
+            }
+        }
+        resize(1);
+        for (int i = 0; i < count; i++) {
+            invoke(i, 1, result);
+        }
+        return result;
+    }
+
+    private void invoke(int first, int boxes, float[] result) {
+        inputs[0] = slice(labels, first * labelBytes, boxes * labelBytes);
+        inputs[1] = slice(images, first * IMAGE_BYTES, boxes * IMAGE_BYTES);
+        output.clear();
+        output.limit(boxes * 4);
+        outputs.put(0, output);
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+        output.rewind();
+        for (int i = 0; i < boxes; i++) {
+            result[first + i] = output.getFloat();
+        }
+    }
+
+    private void resize(int boxes) {
+        if (boxes == batchSize) {
+            return;
+        }
+        batchSize = -1;     // If one of the inputs can't be resized the next call resizes both again
+        interpreter.resizeInput(0, new int[]{boxes, classes});
+        interpreter.resizeInput(1, new int[]{boxes, INPUT_HEIGHT, INPUT_WIDTH, 1});
+        batchSize = boxes;
+    }
+
+    private void ensureCapacity(int boxes) {
+        if (labels.capacity() >= boxes * labelBytes) {
+            return;
+        }
+        int newBoxes = Math.max(boxes, labels.capacity() / labelBytes * 2);
+        labels = grow(labels, newBoxes * labelBytes);
+        images = grow(images, newBoxes * IMAGE_BYTES);
+        output = allocate(newBoxes * 4);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+}
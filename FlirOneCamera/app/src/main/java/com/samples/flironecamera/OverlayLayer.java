@@ -0,0 +1,200 @@
+/*******************************************************************
+ * @file OverlayLayer.java
+ *
+ * @brief The visualisations of the detections, drawn apart from the camera frame
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+
+/**
+ * Labels, spheres, shapes and bounding boxes are drawn into this layer instead of straight into the camera image.
+ * The layer is kept between frames and only drawn again when the detections or the visualisation settings change,
+ * see {@link #begin(Mat, int[])}. Every frame it is put on top of the camera image with {@link #composite(Mat)},
+ * which only touches the area that has drawings in it.
+ * <p/>
+ * Every pixel of the layer is stored premultiplied: {@code result = frame * keep / 255 + color}. A pixel that was
+ * never drawn has {@code keep = 255} and {@code color = 0}, an opaque drawing has {@code keep = 0}.
+ * Only used by the render thread.
+ */
+class OverlayLayer {
+
+    private static final Scalar CLEAR_KEEP = new Scalar(255, 255, 255);
+    private static final Scalar CLEAR_COLOR = new Scalar(0, 0, 0);
+    private static final Scalar OPAQUE = new Scalar(0, 0, 0);
+
+    private Mat color = new Mat();
+    private Mat keep = new Mat();
+    private Rect dirty = null;          // Bounding box of everything drawn since the last clear, inside the layer
+    private int[] signature = null;
+
+    /**
+     * Start a frame
+     *
+     * @param frame     the camera image the layer is put on, sets the size of the layer
+     * @param signature everything the drawings depend on (boxes, classes, settings)
+     * @return true if the layer was cleared and has to be drawn again, false if the drawings of the last frame are
+     * still valid
+     */
+    boolean begin(Mat frame, int[] signature) {
+        if (color.rows() != frame.rows() || color.cols() != frame.cols()) {
+            color.create(frame.rows(), frame.cols(), CvType.CV_8UC3);
+            keep.create(frame.rows(), frame.cols(), CvType.CV_8UC3);
+            color.setTo(CLEAR_COLOR);
+            keep.setTo(CLEAR_KEEP);
+            dirty = null;
+            this.signature = null;
+        }
+        if (Arrays.equals(signature, this.signature)) {
+            return false;
+        }
+        if (dirty != null) {
+            Mat colorRoi = color.submat(dirty);
+            Mat keepRoi = keep.submat(dirty);
+            colorRoi.setTo(CLEAR_COLOR);
+            keepRoi.setTo(CLEAR_KEEP);
+            colorRoi.release();
+            keepRoi.release();
+            dirty = null;
+        }
+        this.signature = signature;
+        return true;
+    }
+
+    /**
+     * Put the layer on top of the camera image
+     */
+    void composite(Mat frame) {
+        if (dirty == null) {
+            return;
+        }
+        Mat roi = frame.submat(dirty);
+        Mat keepRoi = keep.submat(dirty);
+        Mat colorRoi = color.submat(dirty);
+        Core.multiply(roi, keepRoi, roi, 1 / 255.0);
+        Core.add(roi, colorRoi, roi);
+        roi.release();
+        keepRoi.release();
+        colorRoi.release();
+    }
+
+    /**
+     * Forget the drawings so the next {@link #begin(Mat, int[])} draws again and free the layer
+     */
+    void clear() {
+        color.release();
+        keep.release();
+        color = new Mat();
+        keep = new Mat();
+        dirty = null;
+        signature = null;
+    }
+
+    /**
+     * A rectangle between two corners, filled if {@code thickness} is negative, like {@code Imgproc.rectangle}
+     */
+    void rectangle(Point corner1, Point corner2, Scalar rgb, int thickness) {
+        Imgproc.rectangle(color, corner1, corner2, rgb, thickness);
+        Imgproc.rectangle(keep, corner1, corner2, OPAQUE, thickness);
+        int margin = Math.max(thickness, 0);
+        markDirty((int) Math.min(corner1.x, corner2.x) - margin, (int) Math.min(corner1.y, corner2.y) - margin,
+                (int) Math.max(corner1.x, corner2.x) + margin + 1, (int) Math.max(corner1.y, corner2.y) + margin + 1);
+    }
+
+    /**
+     * A filled rectangle that lets {@code 1 - opacity} of what is below it through, like drawing it into a copy of
+     * the frame and blending the copy with {@code addWeighted}
+     */
+    void translucentRectangle(Point corner1, Point corner2, Scalar rgb, double opacity) {
+        Rect area = clip((int) Math.min(corner1.x, corner2.x), (int) Math.min(corner1.y, corner2.y),
+                (int) Math.max(corner1.x, corner2.x) + 1, (int) Math.max(corner1.y, corner2.y) + 1);
+        if (area == null) {
+            return;
+        }
+        Mat colorRoi = color.submat(area);
+        Mat keepRoi = keep.submat(area);
+        Mat tint = new Mat(area.size(), CvType.CV_8UC3, rgb);
+        Core.addWeighted(colorRoi, 1 - opacity, tint, opacity, 0, colorRoi);
+        keepRoi.convertTo(keepRoi, -1, 1 - opacity);
+        tint.release();
+        colorRoi.release();
+        keepRoi.release();
+        markDirty(area.x, area.y, area.x + area.width, area.y + area.height);
+    }
+
+    /**
+     * Add an image to what is below it, {@code weight} times its value, parts outside of the layer are skipped
+     */
+    void add(int left, int top, Mat image, double weight) {
+        Rect area = clip(left, top, left + image.cols(), top + image.rows());
+        if (area == null) {
+            return;
+        }
+        Mat colorRoi = color.submat(area);
+        Mat imageRoi = image.submat(area.y - top, area.y - top + area.height, area.x - left, area.x - left + area.width);
+        Core.addWeighted(colorRoi, 1, imageRoi, weight, 0, colorRoi);
+        colorRoi.release();
+        imageRoi.release();
+        markDirty(area.x, area.y, area.x + area.width, area.y + area.height);
+    }
+
+    /**
+     * Alpha blend a premultiplied image, {@code imageKeep} is 255 minus its alpha
+     */
+    void blend(int left, int top, Mat imageColor, Mat imageKeep) {
+        Rect area = clip(left, top, left + imageColor.cols(), top + imageColor.rows());
+        if (area == null) {
+            return;
+        }
+        Mat colorRoi = color.submat(area);
+        Mat keepRoi = keep.submat(area);
+        Mat imageColorRoi = imageColor.submat(area.y - top, area.y - top + area.height, area.x - left, area.x - left + area.width);
+        Mat imageKeepRoi = imageKeep.submat(area.y - top, area.y - top + area.height, area.x - left, area.x - left + area.width);
+        Core.multiply(colorRoi, imageKeepRoi, colorRoi, 1 / 255.0);
+        Core.add(colorRoi, imageColorRoi, colorRoi);
+        Core.multiply(keepRoi, imageKeepRoi, keepRoi, 1 / 255.0);
+        colorRoi.release();
+        keepRoi.release();
+        imageColorRoi.release();
+        imageKeepRoi.release();
+        markDirty(area.x, area.y, area.x + area.width, area.y + area.height);
+    }
+
+    /**
+     * The part of [x0, x1) x [y0, y1) inside the layer, null if there is none
+     */
+    private Rect clip(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, color.cols());
+        y1 = Math.min(y1, color.rows());
+        if (x1 <= x0 || y1 <= y0) {
+            return null;
+        }
+        return new Rect(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    private void markDirty(int x0, int y0, int x1, int y1) {
+        Rect area = clip(x0, y0, x1, y1);
+        if (area == null) {
+            return;
+        }
+        if (dirty == null) {
+            dirty = area;
+            return;
+        }
+        int left = Math.min(dirty.x, area.x);
+        int top = Math.min(dirty.y, area.y);
+        int right = Math.max(dirty.x + dirty.width, area.x + area.width);
+        int bottom = Math.max(dirty.y + dirty.height, area.y + area.height);
+        dirty = new Rect(left, top, right - left, bottom - top);
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************
+ * @file OverlaySprites.java
+ *
+ * @brief Decoded and pre scaled overlay images that are blended into the box area only
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import android.util.Log;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sphere and the microphone / camera shapes used to be read from the storage for every box of every frame,
+ * resized, moved onto a full frame sized canvas with {@code warpAffine} and added to the whole frame.
+ * Here every image is decoded once, the scaled copies are kept in an LRU cache and only the part of the
+ * {@link OverlayLayer} under the sprite is touched.
+ * <p/>
+ * Sizes are rounded to a multiple of {@code quantum} pixels so boxes that change size a little between frames
+ * share a cached copy. Images without alpha channel are added like before (black is transparent), images with
+ * an alpha channel are alpha blended. Only used by the render thread.
+ */
+class OverlaySprites {
+
+    private static final String TAG = "OverlaySprites";
+
+    static final String SPHERE = "sphere.png";
+    static final String MIC = "mic.png";
+    static final String MIC_AND_CAMERA = "micAndCam.png";
+
+    /**
+     * One scaled copy of a sprite, ready to be blended
+     */
+    private static final class Variant {
+        final Mat color;    // Without alpha: the scaled image, with alpha: color * alpha * weight
+        final Mat keep;     // Only with alpha: 255 * (1 - alpha * weight), how much of the frame stays
+
+        Variant(Mat color, Mat keep) {
+            this.color = color;
+            this.keep = keep;
+        }
+
+        void release() {
+            color.release();
+            if (keep != null)
+                keep.release();
+        }
+    }
+
+    private final String directory;
+    private final int quantum;
+    private final Map<String, Mat> decoded = new HashMap<>();
+    private final Map<String, Variant> scaled;
+
+    /**
+     * @param directory   where the png files are, ends with a separator
+     * @param maxVariants how many scaled copies are kept
+     * @param quantum     sizes are rounded to a multiple of this many pixels
+     */
+    OverlaySprites(String directory, final int maxVariants, int quantum) {
+        this.directory = directory;
+        this.quantum = quantum;
+        this.scaled = new LinkedHashMap<String, Variant>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Variant> eldest) {
+                if (size() <= maxVariants)
+                    return false;
+                eldest.getValue().release();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Draw a sprite into the overlay layer, the parts outside of the layer are skipped
+     *
+     * @param size   width and height of the sprite in pixels
+     * @param x      left edge of the sprite in the frame
+     * @param y      top edge of the sprite in the frame
+     * @param weight factor of the sprite, 1 draws it at full strength
+     */
+    void draw(OverlayLayer layer, String name, double size, double x, double y, double weight) {
+        Variant variant = get(name, quantize(size), weight);
+        if (variant == null)
+            return;
+        int left = (int) Math.round(x);
+        int top = (int) Math.round(y);
+        if (variant.keep == null)
+            layer.add(left, top, variant.color, weight);
+        else
+            layer.blend(left, top, variant.color, variant.keep);
+    }
+
+    /**
+     * Free all decoded and scaled images
+     */
+    void clear() {
+        for (Variant variant : scaled.values())
+            variant.release();
+        scaled.clear();
+        for (Mat mat : decoded.values())
+            mat.release();
+        decoded.clear();
+    }
+
+    int quantize(double size) {
+        return Math.max(quantum, (int) Math.round(size / quantum) * quantum);
+    }
+
+    private Variant get(String name, int side, double weight) {
+        String key = name + "@" + side + "x" + weight;
+        Variant variant = scaled.get(key);
+        if (variant != null)
+            return variant;
+        Mat source = decode(name);
+        if (source.empty())
+            return null;
+        Mat resized = new Mat();
+        Imgproc.resize(source, resized, new Size(side, side));
+        if (resized.channels() == 4) {
+            variant = premultiply(resized, weight);
+            resized.release();
+        } else {
+            variant = new Variant(resized, null);
+        }
+        scaled.put(key, variant);
+        return variant;
+    }
+
+    private Mat decode(String name) {
+        Mat mat = decoded.get(name);
+        if (mat == null) {
+            mat = Imgcodecs.imread(directory + name, Imgcodecs.IMREAD_UNCHANGED);
+            if (mat.empty())
+                Log.e(TAG, "Could not read " + directory + name);
+            else if (mat.channels() == 1)
+                Imgproc.cvtColor(mat, mat, Imgproc.COLOR_GRAY2BGR);
+            decoded.put(name, mat);     // An empty Mat is kept too so a missing file is only looked up once
+        }
+        return mat;
+    }
+
+    private static Variant premultiply(Mat bgra, double weight) {
+        List<Mat> channels = new ArrayList<>(4);
+        Core.split(bgra, channels);
+        Mat alpha = channels.remove(3);
+        Mat weightedAlpha = new Mat();
+        alpha.convertTo(weightedAlpha, CvType.CV_8U, weight);
+        Mat alpha3 = new Mat();
+        Core.merge(Arrays.asList(weightedAlpha, weightedAlpha, weightedAlpha), alpha3);
+        Mat bgr = new Mat();
+        Core.merge(channels, bgr);
+        Mat color = new Mat();
+        Core.multiply(bgr, alpha3, color, 1 / 255.0);
+        Mat keep = new Mat();
+        Core.bitwise_not(alpha3, keep);    // 255 - alpha for 8 bit values
+        for (Mat channel : channels)
+            channel.release();
+        alpha.release();
+        weightedAlpha.release();
+        alpha3.release();
+        bgr.release();
+        return new Variant(color, keep);
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************
+ * @file SceneChangeGate.java
+ *
+ * @brief Skips the detection of frames where the thermal image didn't change
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the thermal channel of the fused yolo input, shrunk to 80x60, with the one of the last frame that was
+ * detected. If less than a given fraction of the pixels differ by more than a few gray levels, nothing moved and
+ * nothing heated up or cooled down, so the detection of that frame is skipped and the last result is shown again.
+ * The comparison is against the last detected frame and not the previous one, so a slow change adds up until it is
+ * detected, and at most {@code maxSkipped} frames in a row are skipped.
+ * <p/>
+ * {@link #hasChanged(Mat)} must only be called from one thread, the counters can be read from any thread.
+ */
+class SceneChangeGate {
+
+    private static final Size SIZE = new Size(80, 60);
+
+    private final double pixelThreshold;
+    private final double changedFraction;
+    private final int maxSkipped;
+    private final Mat small = new Mat();
+    private final Mat thermal = new Mat();
+    private final Mat reference = new Mat();
+    private final Mat difference = new Mat();
+    private int skippedInRow = 0;
+
+    final AtomicLong checked = new AtomicLong();
+    final AtomicLong skipped = new AtomicLong();
+    private volatile double lastChange = 0;
+
+    /**
+     * @param pixelThreshold  gray levels a pixel has to change by to count as changed
+     * @param changedFraction fraction of changed pixels from which on a frame is detected
+     * @param maxSkipped      frames in a row that may be skipped before one is detected anyway
+     */
+    SceneChangeGate(double pixelThreshold, double changedFraction, int maxSkipped) {
+        this.pixelThreshold = pixelThreshold;
+        this.changedFraction = changedFraction;
+        this.maxSkipped = maxSkipped;
+    }
+
+    /**
+     * Whether a frame has to be detected, if it does it becomes the new reference
+     *
+     * @param fused the yolo input, 8 bit with the thermal image in the first channel
+     */
+    boolean hasChanged(Mat fused) {
+        Imgproc.resize(fused, small, SIZE, 0, 0, Imgproc.INTER_AREA);
+        Core.extractChannel(small, thermal, 0);
+        checked.incrementAndGet();
+        boolean changed = true;
+        if (!reference.empty() && skippedInRow < maxSkipped) {
+            Core.absdiff(thermal, reference, difference);
+            Imgproc.threshold(difference, difference, pixelThreshold, 255, Imgproc.THRESH_BINARY);
+            lastChange = Core.countNonZero(difference) / (double) difference.total();
+            changed = lastChange >= changedFraction;
+        }
+        if (changed) {
+            thermal.copyTo(reference);
+            skippedInRow = 0;
+        } else {
+            skippedInRow++;
+            skipped.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * Share of the checked frames that were skipped
+     */
+    double getSkipRatio() {
+        long count = checked.get();
+        return count == 0 ? 0 : skipped.get() / (double) count;
+    }
+
+    /**
+     * Forget the reference, the next frame is detected
+     */
+    void reset() {
+        reference.release();
+        skippedInRow = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("scene gate: skipped=%d/%d (%.0f%%) last change=%.1f%%", skipped.get(), checked.get(),
+                getSkipRatio() * 100, lastChange * 100);
+    }
+}
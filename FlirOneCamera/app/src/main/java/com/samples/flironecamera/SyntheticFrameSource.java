@@ -0,0 +1,89 @@
+/*******************************************************************
+ * @file SyntheticFrameSource.java
+ *
+ * @brief Fake camera that feeds generated frames into a FramePipeline
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the FLIR ONE stream when the pipeline is run headless on a JVM, in the unit tests and the benchmarks.
+ * Frames are created by a {@link FrameFactory} and submitted at a fixed rate from a background thread,
+ * the same way the Thermal SDK calls {@link CameraHandler.StreamDataListener} from a non-ui thread.
+ */
+class SyntheticFrameSource<T> {
+
+    interface FrameFactory<T> {
+        T create(long frameNumber);
+    }
+
+    private final FrameFactory<T> factory;
+    private final long frameIntervalNanos;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param framesPerSecond the rate of the fake camera, 0 or less submits frames as fast as the pipeline accepts them
+     */
+    SyntheticFrameSource(FrameFactory<T> factory, double framesPerSecond) {
+        this.factory = factory;
+        this.frameIntervalNanos = framesPerSecond > 0 ? (long) (1000000000L / framesPerSecond) : 0;
+    }
+
+    synchronized void start(FramePipeline<T> pipeline) {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(() -> {
+            long frameNumber = 0;
+            long next = System.nanoTime();
+            try {
+                while (running) {
+                    if (pipeline.submit(factory.create(frameNumber++))) {
+                        submitted.incrementAndGet();
+                    } else {
+                        rejected.incrementAndGet();
+                    }
+                    if (frameIntervalNanos > 0) {
+                        next += frameIntervalNanos;
+                        long sleepNanos = next - System.nanoTime();
+                        if (sleepNanos > 0) {
+                            Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                //stop() was called
+            }
+        }, "synthetic-frame-source");
+        thread.start();
+    }
+
+    /**
+     * Stop submitting frames, returns once the source thread has ended so no frame is submitted afterwards
+     */
+    synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    long getSubmitted() {
+        return submitted.get();
+    }
+
+    long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************
+ * @file ThermalRegistration.java
+ *
+ * @brief Aligns the thermal image to the rgb image with cached remap tables
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces the per frame {@code Imgproc.resize} + {@code Imgproc.warpAffine} with a single {@code Imgproc.remap}.
+ * The lookup table for a combination of thermal size, rgb size and {@link AlignmentTransform} is built the first time
+ * it is needed and reused for every following frame, so a frame costs one pass over the image and no allocation.
+ * <p/>
+ * With {@code fixedPoint} the float maps are converted to the CV_16SC2 format which remap processes faster,
+ * at the cost of a 1/32 pixel interpolation precision.
+ */
+class ThermalRegistration {
+
+    private static final Scalar BORDER = new Scalar(0, 0, 0);
+
+    private static final class Key {
+        final int thermalRows, thermalCols, rgbRows, rgbCols;
+        final AlignmentTransform transform;
+
+        Key(int thermalRows, int thermalCols, int rgbRows, int rgbCols, AlignmentTransform transform) {
+            this.thermalRows = thermalRows;
+            this.thermalCols = thermalCols;
+            this.rgbRows = rgbRows;
+            this.rgbCols = rgbCols;
+            this.transform = transform;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return thermalRows == other.thermalRows && thermalCols == other.thermalCols
+                    && rgbRows == other.rgbRows && rgbCols == other.rgbCols
+                    && transform.equals(other.transform);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = thermalRows;
+            result = 31 * result + thermalCols;
+            result = 31 * result + rgbRows;
+            result = 31 * result + rgbCols;
+            return 31 * result + transform.hashCode();
+        }
+    }
+
+    private final boolean fixedPoint;
+    private final Map<Key, Mat[]> maps = new HashMap<>();
+
+    ThermalRegistration(boolean fixedPoint) {
+        this.fixedPoint = fixedPoint;
+    }
+
+    /**
+     * Write the thermal image aligned to the rgb image into {@code dst}, the size of {@code dst} is the size of the rgb image
+     */
+    void align(Mat thermal, Mat dst, AlignmentTransform transform) {
+        Mat[] map = getMap(thermal.rows(), thermal.cols(), dst.rows(), dst.cols(), transform);
+        Imgproc.remap(thermal, dst, map[0], map[1], Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, BORDER);
+    }
+
+    /**
+     * The two remap tables, built on first use
+     */
+    synchronized Mat[] getMap(int thermalRows, int thermalCols, int rgbRows, int rgbCols, AlignmentTransform transform) {
+        Key key = new Key(thermalRows, thermalCols, rgbRows, rgbCols, transform);
+        Mat[] map = maps.get(key);
+        if (map == null) {
+            map = buildMap(key);
+            maps.put(key, map);
+        }
+        return map;
+    }
+
+    synchronized void clear() {
+        for (Mat[] map : maps.values()) {
+            map[0].release();
+            map[1].release();
+        }
+        maps.clear();
+    }
+
+    private Mat[] buildMap(Key key) {
+        // Same output size as the resize in the old code, new Size(width * scale, height * scale) truncated to int
+        int scaledCols = (int) (key.rgbCols * key.transform.scale);
+        int scaledRows = (int) (key.rgbRows * key.transform.scale);
+        float[] xs = axisMap(key.rgbCols, scaledCols, key.thermalCols, key.transform.offsetX);
+        float[] ys = axisMap(key.rgbRows, scaledRows, key.thermalRows, key.transform.offsetY);
+
+        float[] mapX = new float[key.rgbRows * key.rgbCols];
+        float[] mapY = new float[key.rgbRows * key.rgbCols];
+        for (int y = 0; y < key.rgbRows; y++) {
+            int rowStart = y * key.rgbCols;
+            System.arraycopy(xs, 0, mapX, rowStart, key.rgbCols);
+            Arrays.fill(mapY, rowStart, rowStart + key.rgbCols, ys[y]);
+        }
+        Mat matX = new Mat(key.rgbRows, key.rgbCols, CvType.CV_32FC1);
+        Mat matY = new Mat(key.rgbRows, key.rgbCols, CvType.CV_32FC1);
+        matX.put(0, 0, mapX);
+        matY.put(0, 0, mapY);
+        if (!fixedPoint) {
+            return new Mat[]{matX, matY};
+        }
+        Mat map1 = new Mat();
+        Mat map2 = new Mat();
+        Imgproc.convertMaps(matX, matY, map1, map2, CvType.CV_16SC2);
+        matX.release();
+        matY.release();
+        return new Mat[]{map1, map2};
+    }
+
+    /**
+     * Source coordinate for every destination coordinate along one axis. The destination is shifted by {@code offset},
+     * inside the shifted area the coordinate is mapped like a bilinear resize from {@code srcSize} to {@code scaledSize},
+     * outside of it the coordinate is -1 so remap writes the black border that warpAffine used to write.
+     */
+    private static float[] axisMap(int dstSize, int scaledSize, int srcSize, double offset) {
+        float[] map = new float[dstSize];
+        double ratio = srcSize / (double) scaledSize;
+        for (int i = 0; i < dstSize; i++) {
+            double scaled = i - offset;
+            if (scaled < 0 || scaled >= scaledSize) {
+                map[i] = -1;
+                continue;
+            }
+            double src = (scaled + 0.5) * ratio - 0.5;
+            map[i] = (float) Math.min(Math.max(src, 0), srcSize - 1);
+        }
+        return map;
+    }
+}
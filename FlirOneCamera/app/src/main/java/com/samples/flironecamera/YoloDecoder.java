@@ -0,0 +1,75 @@
+/*******************************************************************
+ * @file YoloDecoder.java
+ *
+ * @brief Copies the yolo output layers to Java in one call each and decodes them
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.List;
+
+/**
+ * Reading an output layer row by row with {@code row()}, {@code colRange()}, {@code Core.minMaxLoc()} and four
+ * {@code get()} calls costs several JNI calls and Mat headers per anchor. This decoder copies every layer with a single
+ * {@code Mat.get(0, 0, float[])} into a buffer that is kept between frames and leaves the argmax, the threshold and
+ * the box conversion to {@link YoloPostProcessor#decode}. {@code YoloDecoderBenchmark} compares both.
+ * <p/>
+ * Not thread safe, one decoder per stage thread.
+ */
+class YoloDecoder {
+
+    private float[] buffer = new float[0];
+
+    /**
+     * Decode all output layers into the candidates
+     *
+     * @param classes the classes of the network, {@link NetworkDescriptor#classes}
+     *
+     * @return the number of candidates that were added
+     */
+    int decode(List<Mat> outputs, int classes, float confThreshold, int frameCols, int frameRows, Detections candidates) {
+        int added = 0;
+        for (Mat level : outputs) {
+            copy(level, (int) level.total() * level.channels());
+            added += YoloPostProcessor.decode(buffer, level.rows(), level.cols(), classes, confThreshold, frameCols, frameRows, candidates);
+        }
+        return added;
+    }
+
+    /**
+     * Decode the output layers of a batch, one image per tile, into the candidates in frame coordinates
+     *
+     * @return the number of candidates that were added
+     */
+    int decode(List<Mat> outputs, List<Rect> tiles, int classes, float confThreshold, Detections candidates) {
+        int added = 0;
+        for (Mat level : outputs) {
+            int length = (int) level.total() * level.channels();
+            int cols = level.size(level.dims() - 1);    // A batch gives images x rows x cols, a single image rows x cols
+            int rows = length / cols / tiles.size();
+            copy(level, length);
+            for (int i = 0; i < tiles.size(); i++) {
+                Rect tile = tiles.get(i);
+                added += YoloPostProcessor.decode(buffer, i * rows * cols, rows, cols, classes, confThreshold, tile.x, tile.y, tile.width, tile.height, candidates);
+            }
+        }
+        return added;
+    }
+
+    private void copy(Mat level, int length) {
+        if (buffer.length < length) {
+            buffer = new float[length];
+        }
+        Mat continuous = level.isContinuous() ? level : level.clone();
+        if (continuous.dims() > 2) {
+            continuous.get(new int[continuous.dims()], buffer);
+        } else {
+            continuous.get(0, 0, buffer);   // Copies min(buffer.length, length) values, a longer buffer is fine
+        }
+        if (continuous != level) {
+            continuous.release();
+        }
+    }
+}
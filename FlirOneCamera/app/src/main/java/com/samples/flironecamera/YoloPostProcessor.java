@@ -0,0 +1,108 @@
+/*******************************************************************
+ * @file YoloPostProcessor.java
+ *
+ * @brief Turns the yolo output tensors into boxes and runs non maximum suppression
+ ********************************************************************/
+package com.samples.flironecamera;
+
+/**
+ * The part of the detection that doesn't need OpenCV natives: decoding the rows of a yolo output layer into boxes
+ * and removing the overlapping ones. Works on plain float arrays so recorded output tensors can be replayed
+ * on a desktop JVM, see {@code YoloPostProcessorTest}.
+ * <p/>
+ * A row of an output layer is (center x, center y, width, height, objectness, one score per class), the
+ * coordinates are relative to the image size. The number of classes comes from the cfg, see {@link NetworkDescriptor}.
+ */
+final class YoloPostProcessor {
+
+    static final int SCORES_OFFSET = 5;
+
+    private YoloPostProcessor() {
+    }
+
+    /**
+     * Add every row whose best class score is above {@code confThreshold} to the candidates
+     *
+     * @param data      one output layer, {@code rows * cols} floats in row major order
+     * @param classes   number of class scores per row, {@code cols} must be {@link #SCORES_OFFSET} + classes
+     * @param frameCols width of the image the boxes are scaled to
+     * @param frameRows height of the image the boxes are scaled to
+     * @return the number of candidates that were added
+     */
+    static int decode(float[] data, int rows, int cols, int classes, float confThreshold, int frameCols, int frameRows, Detections candidates) {
+        return decode(data, 0, rows, cols, classes, confThreshold, 0, 0, frameCols, frameRows, candidates);
+    }
+
+    /**
+     * Same as {@link #decode(float[], int, int, int, float, int, int, Detections)} for the output of one tile
+     * of a frame, e.g. one image of a batch
+     *
+     * @param start    index of the first value of the tile's output in {@code data}
+     * @param tileX    left of the tile in the frame, the boxes are moved by it
+     * @param tileY    top of the tile in the frame
+     * @param tileCols width of the tile, the boxes are scaled to it and clipped to the tile
+     * @param tileRows height of the tile
+     */
+    static int decode(float[] data, int start, int rows, int cols, int classes, float confThreshold, int tileX, int tileY, int tileCols, int tileRows,
+                      Detections candidates) {
+        if (cols != SCORES_OFFSET + classes) {
+            throw new IllegalArgumentException("An output row has " + cols + " values, the cfg has " + classes + " classes");
+        }
+        int added = 0;
+        for (int r = 0, offset = start; r < rows; r++, offset += cols) {
+            int bestClass = 0;
+            float confidence = data[offset + SCORES_OFFSET];
+            for (int c = SCORES_OFFSET + 1; c < cols; c++) {   // The first maximum wins like in Core.minMaxLoc
+                if (data[offset + c] > confidence) {
+                    confidence = data[offset + c];
+                    bestClass = c - SCORES_OFFSET;
+                }
+            }
+            if (confidence > confThreshold) {
+                addBox(data[offset], data[offset + 1], data[offset + 2], data[offset + 3], tileX, tileY, tileCols, tileRows, confidence, bestClass, candidates);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Convert a relative center / size box to pixels of the tile, clip it to the tile and add it in frame pixels
+     */
+    private static void addBox(float centerX, float centerY, float width, float height, int tileX, int tileY, int tileCols, int tileRows,
+                               float confidence, int classId, Detections candidates) {
+        int boxWidth = (int) ((double) width * tileCols);
+        int boxHeight = (int) ((double) height * tileRows);
+        int left = (int) ((double) centerX * tileCols) - boxWidth / 2;
+        int top = (int) ((double) centerY * tileRows) - boxHeight / 2;
+        left = Math.min(Math.max(left, 0), tileCols);
+        top = Math.min(Math.max(top, 0), tileRows);
+        boxWidth = Math.min(Math.max(boxWidth, 0), tileCols - left);
+        boxHeight = Math.min(Math.max(boxHeight, 0), tileRows - top);
+        candidates.add(tileX + left, tileY + top, boxWidth, boxHeight, confidence, classId);
+    }
+
+    /**
+     * The indices of the candidates that survive non maximum suppression, sorted by decreasing confidence
+     *
+     * @param perClass only suppress boxes of the same yolo class
+     * @param topK     only the topK highest scoring candidates are considered, {@link NonMaxSuppression#NO_TOP_K} for all
+     */
+    static int[] suppress(Detections candidates, float confThreshold, float nmsThreshold, boolean perClass, int topK) {
+        if (perClass) {
+            return NonMaxSuppression.perClass(candidates, confThreshold, nmsThreshold, topK);
+        }
+        return NonMaxSuppression.greedy(candidates, confThreshold, nmsThreshold, topK);
+    }
+
+    /**
+     * Same as {@link #suppress(Detections, float, float, boolean, int)} with Soft-NMS: the scores of overlapping
+     * boxes are lowered instead of removing the boxes, see {@link NonMaxSuppression#soft}
+     *
+     * @param sigma    width of the Gaussian penalty
+     * @param minScore boxes whose lowered score falls to it or below are dropped
+     */
+    static int[] softSuppress(Detections candidates, float confThreshold, float sigma, float minScore, boolean perClass, int topK) {
+        return NonMaxSuppression.soft(candidates, perClass, confThreshold, sigma, minScore, topK);
+    }
+}
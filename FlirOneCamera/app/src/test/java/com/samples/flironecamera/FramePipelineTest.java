@@ -0,0 +1,248 @@
+/*******************************************************************
+ * @file FramePipelineTest.java
+ *
+ * @brief Stage order, errors and stop() of the FramePipeline
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FramePipelineTest {
+
+    /**
+     * Stands in for a FrameContext, the sink gives its buffers back like MainActivity does
+     */
+    private static final class Frame {
+        final long number;
+        final AtomicInteger releases = new AtomicInteger();
+
+        Frame(long number) {
+            this.number = number;
+        }
+
+        @Override
+        public String toString() {
+            return "frame " + number;
+        }
+    }
+
+    private static final class RecordingSink implements FramePipeline.Sink<Frame> {
+        final List<Frame> finished = Collections.synchronizedList(new ArrayList<>());
+        final List<Frame> failed = Collections.synchronizedList(new ArrayList<>());
+        final List<String> failedStages = Collections.synchronizedList(new ArrayList<>());
+        final List<Frame> dropped = Collections.synchronizedList(new ArrayList<>());
+        final Semaphore handed = new Semaphore(0);
+
+        @Override
+        public void onFrame(Frame frame) {
+            finished.add(frame);
+            release(frame);
+        }
+
+        @Override
+        public void onError(String stageName, Frame frame, Exception e) {
+            failed.add(frame);
+            failedStages.add(stageName);
+            release(frame);
+        }
+
+        @Override
+        public void onDropped(Frame frame) {
+            dropped.add(frame);
+            release(frame);
+        }
+
+        private void release(Frame frame) {
+            frame.releases.incrementAndGet();
+            handed.release();
+        }
+
+        void await(int frames) throws InterruptedException {
+            assertTrue("the pipeline didn't hand " + frames + " frames to the sink",
+                    handed.tryAcquire(frames, 5, TimeUnit.SECONDS));
+        }
+    }
+
+    private final RecordingSink sink = new RecordingSink();
+    private FramePipeline<Frame> pipeline;
+
+    @After
+    public void stopPipeline() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    private static List<Long> numbers(List<Frame> frames) {
+        List<Long> numbers = new ArrayList<>();
+        synchronized (frames) {
+            for (Frame frame : frames) {
+                numbers.add(frame.number);
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private static void waitFor(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("timed out waiting for " + what);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void framesRunThroughTheStagesInOrder() throws InterruptedException {
+        Map<Long, List<String>> visited = new ConcurrentHashMap<>();
+        pipeline = new FramePipeline<>(2);
+        for (String name : Arrays.asList("ingest", "detect", "render")) {
+            pipeline.addStage(name, frame -> visited.computeIfAbsent(frame.number,
+                    number -> Collections.synchronizedList(new ArrayList<>())).add(name));
+        }
+        pipeline.start(sink);
+        for (long i = 0; i < 20; i++) {
+            assertTrue(pipeline.submit(new Frame(i)));
+        }
+        sink.await(20);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("frames left the pipeline out of order", i, sink.finished.get(i).number);
+            assertEquals(Arrays.asList("ingest", "detect", "render"), visited.get((long) i));
+        }
+        assertEquals(20, pipeline.getCounters().processed.get());
+        assertEquals(0, pipeline.getCounters().dropped.get());
+        for (FramePipeline.StageStats stats : pipeline.getStats()) {
+            assertEquals(stats.name, 20, stats.processed.get());
+        }
+    }
+
+    @Test
+    public void failedFrameGoesToOnErrorAndSkipsTheLaterStages() throws InterruptedException {
+        List<Long> rendered = Collections.synchronizedList(new ArrayList<>());
+        pipeline = new FramePipeline<Frame>(2)
+                .addStage("ingest", frame -> {
+                })
+                .addStage("detect", frame -> {
+                    if (frame.number == 3) {
+                        throw new IllegalStateException("no model");
+                    }
+                })
+                .addStage("render", frame -> rendered.add(frame.number));
+        pipeline.start(sink);
+        for (long i = 0; i < 6; i++) {
+            pipeline.submit(new Frame(i));
+        }
+        sink.await(6);
+
+        assertEquals(Arrays.asList(3L), numbers(sink.failed));
+        assertEquals(Arrays.asList("detect"), sink.failedStages);
+        assertEquals(Arrays.asList(0L, 1L, 2L, 4L, 5L), numbers(sink.finished));
+        assertFalse(rendered.contains(3L));
+        assertEquals(1, pipeline.getStats().get(1).failed.get());
+        assertEquals(1, pipeline.getCounters().dropped.get());
+        assertEquals(5, pipeline.getCounters().processed.get());
+    }
+
+    @Test
+    public void stopHandsEveryUnfinishedFrameToOnDropped() throws InterruptedException {
+        CountDownLatch never = new CountDownLatch(1);
+        pipeline = new FramePipeline<Frame>(1, FrameQueue.Policy.BLOCK, 2)
+                .addStage("ingest", frame -> {
+                })
+                .addStage("detect", frame -> never.await());
+        pipeline.start(sink);
+        List<Frame> frames = new ArrayList<>();
+        for (long i = 0; i < 5; i++) {
+            frames.add(new Frame(i));
+        }
+        // Frame 0 blocks in detect, 1 waits in front of it and 2 is stuck in ingest handing it on
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(frames.get(i));
+        }
+        waitFor("ingest to finish three frames", () -> pipeline.getStats().get(0).processed.get() == 3);
+        // 3 and 4 wait in the admission queue
+        pipeline.submit(frames.get(3));
+        pipeline.submit(frames.get(4));
+        pipeline.stop();
+
+        assertTrue(sink.finished.isEmpty());
+        assertTrue(sink.failed.isEmpty());
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), numbers(sink.dropped));
+        for (Frame frame : frames) {
+            assertEquals(frame + " released", 1, frame.releases.get());
+        }
+        assertEquals(5, pipeline.getCounters().dropped.get());
+        assertFalse(pipeline.submit(new Frame(5)));
+    }
+
+    @Test
+    public void submitIsRejectedWhileNotRunning() throws InterruptedException {
+        pipeline = new FramePipeline<Frame>(1).addStage("ingest", frame -> {
+        });
+        assertFalse(pipeline.submit(new Frame(0)));
+        pipeline.start(sink);
+        assertTrue(pipeline.submit(new Frame(1)));
+        sink.await(1);
+        pipeline.stop();
+        assertFalse(pipeline.submit(new Frame(2)));
+        assertEquals(Arrays.asList(1L), numbers(sink.finished));
+    }
+
+    @Test
+    public void everyFrameOfTheFakeSourceIsReleasedOnce() throws InterruptedException {
+        for (FrameQueue.Policy policy : FrameQueue.Policy.values()) {
+            RecordingSink sink = new RecordingSink();
+            List<Frame> created = Collections.synchronizedList(new ArrayList<>());
+            FramePipeline<Frame> pipeline = new FramePipeline<Frame>(1, policy, 2)
+                    .addStage("ingest", frame -> Thread.sleep(1))
+                    .addStage("detect", frame -> Thread.sleep(3))
+                    .addStage("render", frame -> {
+                        if (frame.number % 7 == 0) {
+                            throw new IllegalStateException("broken frame");
+                        }
+                    });
+            pipeline.start(sink);
+            SyntheticFrameSource<Frame> source = new SyntheticFrameSource<>(frameNumber -> {
+                Frame frame = new Frame(frameNumber);
+                created.add(frame);
+                return frame;
+            }, 0);
+            source.start(pipeline);
+            Thread.sleep(200);
+            source.stop();
+            pipeline.stop();
+
+            long handed = sink.finished.size() + sink.failed.size() + sink.dropped.size();
+            assertEquals(policy + ": frames handed to the sink", source.getSubmitted() + source.getRejected(), handed);
+            assertTrue(policy + ": nothing reached the sink", handed > 0);
+            synchronized (created) {
+                for (Frame frame : created) {
+                    assertTrue(policy + ": " + frame + " released twice", frame.releases.get() <= 1);
+                }
+            }
+            FrameCounters counters = pipeline.getCounters();
+            assertEquals(policy + ": counted frames", handed, counters.processed.get() + counters.dropped.get());
+        }
+    }
+}
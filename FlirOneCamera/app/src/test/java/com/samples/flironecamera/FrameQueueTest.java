@@ -0,0 +1,113 @@
+/*******************************************************************
+ * @file FrameQueueTest.java
+ *
+ * @brief Admission policies of the FrameQueue
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameQueueTest {
+
+    private final FrameCounters counters = new FrameCounters();
+    private final List<Integer> dropped = new ArrayList<>();
+
+    private FrameQueue<Integer> queue(FrameQueue.Policy policy, int capacity) {
+        FrameQueue<Integer> queue = new FrameQueue<>(policy, capacity, counters);
+        queue.setDropListener(dropped::add);
+        return queue;
+    }
+
+    private static List<Integer> drain(FrameQueue<Integer> queue) {
+        List<Integer> frames = new ArrayList<>();
+        Integer frame;
+        while ((frame = queue.poll()) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    @Test
+    public void dropOldestMakesRoomForTheNewFrame() throws InterruptedException {
+        FrameQueue<Integer> queue = queue(FrameQueue.Policy.DROP_OLDEST, 2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertTrue(queue.offer(4));
+
+        assertEquals(Arrays.asList(1, 2), dropped);
+        assertEquals(Arrays.asList(3, 4), drain(queue));
+        assertEquals(2, counters.dropped.get());
+    }
+
+    @Test
+    public void dropNewestRejectsTheNewFrame() throws InterruptedException {
+        FrameQueue<Integer> queue = queue(FrameQueue.Policy.DROP_NEWEST, 2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+
+        assertEquals(Arrays.asList(3), dropped);
+        assertEquals(Arrays.asList(1, 2), drain(queue));
+        assertEquals(1, counters.dropped.get());
+    }
+
+    @Test
+    public void latestWinsKeepsOneFrameWhateverTheCapacity() throws InterruptedException {
+        FrameQueue<Integer> queue = queue(FrameQueue.Policy.LATEST_WINS, 5);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+
+        assertEquals(1, queue.size());
+        assertEquals(Arrays.asList(1, 2), dropped);
+        assertEquals(Arrays.asList(3), drain(queue));
+    }
+
+    @Test
+    public void blockWaitsForRoomAndDropsNothing() throws InterruptedException {
+        FrameQueue<Integer> queue = queue(FrameQueue.Policy.BLOCK, 1);
+        assertTrue(queue.offer(1));
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread camera = new Thread(() -> {
+            try {
+                queue.offer(2);
+                offered.countDown();
+            } catch (InterruptedException e) {
+                //The test failed and gave up on the thread
+            }
+        });
+        camera.start();
+
+        assertFalse("offer() returned while the queue was full", offered.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, (int) queue.take());
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        assertEquals(2, (int) queue.take());
+        camera.join();
+        assertTrue(dropped.isEmpty());
+        assertEquals(0, counters.dropped.get());
+    }
+
+    @Test
+    public void clearDropsTheWaitingFrames() throws InterruptedException {
+        FrameQueue<Integer> queue = queue(FrameQueue.Policy.DROP_OLDEST, 3);
+        queue.offer(1);
+        queue.offer(2);
+        queue.clear();
+
+        assertNull(queue.poll());
+        assertEquals(Arrays.asList(1, 2), dropped);
+        assertEquals(2, counters.dropped.get());
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************
+ * @file FusionKernelTest.java
+ *
+ * @brief The single pass fusion against the old split/addWeighted/merge code
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * {@link FusionKernel#fuse(Mat, Mat, Mat)} has to produce the same bytes as the OpenCV calls it replaced, otherwise
+ * yolo sees a different input than the one it was trained on. Needs the desktop build of the OpenCV native library,
+ * its directory is passed to gradle with {@code -PopencvLibraryPath=...}.
+ */
+public class FusionKernelTest {
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    /**
+     * The implementation of the align/fuse stage before the kernel
+     */
+    private static void fuseReference(Mat rgb, Mat thermal, Mat dst) {
+        List<Mat> rgbSplit = new ArrayList<>();
+        Core.split(rgb, rgbSplit);
+        Mat newG = rgbSplit.get(1).clone();
+        Mat newB = rgbSplit.get(2).clone();
+        Core.addWeighted(rgbSplit.get(0), 0.33, newG, 0.66, 0, newG);
+        Core.addWeighted(rgbSplit.get(0), 0.33, newB, 0.66, 0, newB);
+        Mat oneChannelThermal = new Mat();
+        Imgproc.cvtColor(thermal, oneChannelThermal, Imgproc.COLOR_RGB2GRAY);
+        Core.merge(Arrays.asList(oneChannelThermal, newG, newB), dst);
+        for (Mat mat : rgbSplit) {
+            mat.release();
+        }
+        newG.release();
+        newB.release();
+        oneChannelThermal.release();
+    }
+
+    private static Mat image(int rows, int cols, byte[] pixels) {
+        Mat mat = new Mat(rows, cols, CvType.CV_8UC3);
+        mat.put(0, 0, pixels);
+        return mat;
+    }
+
+    private static byte[] bytes(Mat mat) {
+        byte[] bytes = new byte[(int) (mat.total() * mat.channels())];
+        mat.get(0, 0, bytes);
+        return bytes;
+    }
+
+    private static void assertSameAsReference(Mat rgb, Mat thermal) {
+        Mat fused = new Mat(rgb.rows(), rgb.cols(), CvType.CV_8UC3);
+        Mat reference = new Mat();
+        new FusionKernel().fuse(rgb, thermal, fused);
+        fuseReference(rgb, thermal, reference);
+        assertArrayEquals(bytes(reference), bytes(fused));
+        fused.release();
+        reference.release();
+    }
+
+    @Test
+    public void everyWeightedPairMatches() {
+        // Row r has red r, column c green c and blue 255 - c, so both table lookups see all 256 x 256 pairs
+        byte[] rgb = new byte[256 * 256 * 3];
+        byte[] thermal = new byte[256 * 256 * 3];
+        for (int r = 0; r < 256; r++) {
+            for (int c = 0; c < 256; c++) {
+                int i = (r * 256 + c) * 3;
+                rgb[i] = (byte) r;
+                rgb[i + 1] = (byte) c;
+                rgb[i + 2] = (byte) (255 - c);
+                thermal[i] = (byte) r;
+                thermal[i + 1] = (byte) c;
+                thermal[i + 2] = (byte) (r * 7 + c * 13);
+            }
+        }
+        assertSameAsReference(image(256, 256, rgb), image(256, 256, thermal));
+    }
+
+    @Test
+    public void noisyFrameOfCameraSizeMatches() {
+        int rows = 1440;
+        int cols = 1080;
+        Random random = new Random(7);
+        byte[] rgb = new byte[rows * cols * 3];
+        byte[] thermal = new byte[rows * cols * 3];
+        random.nextBytes(rgb);
+        random.nextBytes(thermal);
+        assertSameAsReference(image(rows, cols, rgb), image(rows, cols, thermal));
+    }
+
+    @Test
+    public void nonContinuousInputsMatch() {
+        Random random = new Random(11);
+        byte[] rgb = new byte[120 * 90 * 3];
+        byte[] thermal = new byte[120 * 90 * 3];
+        random.nextBytes(rgb);
+        random.nextBytes(thermal);
+        Rect roi = new Rect(7, 5, 61, 97);
+        Mat rgbRoi = image(120, 90, rgb).submat(roi);
+        Mat thermalRoi = image(120, 90, thermal).submat(roi);
+        assertSameAsReference(rgbRoi, thermalRoi);
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************
+ * @file GrayTensorWriterTest.java
+ *
+ * @brief The table based gray conversion against the old per pixel loop
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The on/off model has to see the same floats as before, so the writer is compared bit for bit with the formula of
+ * the old {@code modelInput.get(k, l)} loop. Works on the copied pixels, no OpenCV native library needed.
+ */
+public class GrayTensorWriterTest {
+
+    // Size of the on/off classifier input
+    private static final int ROWS = 145;
+    private static final int COLS = 152;
+
+    /**
+     * The loop of the on/off classifier before the writer, with {@code pixel[]} read from a byte array instead of a Mat
+     */
+    private static ByteBuffer writeReference(byte[] pixels, int area) {
+        ByteBuffer images = ByteBuffer.allocateDirect(area * 4).order(ByteOrder.nativeOrder());
+        for (int p = 0; p < area; p++) {
+            double[] pixel = {pixels[p * 3] & 0xFF, pixels[p * 3 + 1] & 0xFF, pixels[p * 3 + 2] & 0xFF};
+            float red = (float) (((float) pixel[0]) / 255.0);
+            float green = (float) (((float) pixel[1]) / 255.0);
+            float blue = (float) (((float) pixel[2]) / 255.0);
+            images.putFloat((red + green + blue) / 3);
+        }
+        return images;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        ByteBuffer view = buffer.duplicate();
+        view.position(from);
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void cropMatchesTheOldLoop() {
+        // Fixed crop: every channel value shows up at every channel position, the rest is seeded noise
+        int area = ROWS * COLS;
+        byte[] pixels = new byte[area * 3];
+        new Random(3).nextBytes(pixels);
+        for (int p = 0; p < 256 * 3; p++) {
+            pixels[p] = (byte) (p / 3 + p % 3 * 85);
+        }
+        ByteBuffer tensor = ByteBuffer.allocateDirect(area * 4).order(ByteOrder.nativeOrder());
+        new GrayTensorWriter().write(pixels, area, tensor);
+        assertEquals(area * 4, tensor.position());
+        assertArrayEquals(bytes(writeReference(pixels, area), 0, area * 4), bytes(tensor, 0, area * 4));
+    }
+
+    @Test
+    public void appendsCropsOneAfterTheOther() {
+        // The classifier writes all crops of a frame into one batch tensor
+        int area = ROWS * COLS;
+        byte[] first = new byte[area * 3];
+        byte[] second = new byte[area * 3];
+        Random random = new Random(5);
+        random.nextBytes(first);
+        random.nextBytes(second);
+        ByteBuffer tensor = ByteBuffer.allocateDirect(area * 8).order(ByteOrder.nativeOrder());
+        GrayTensorWriter writer = new GrayTensorWriter();
+        writer.write(first, area, tensor);
+        writer.write(second, area, tensor);
+        assertEquals(area * 8, tensor.position());
+        assertArrayEquals(bytes(writeReference(first, area), 0, area * 4), bytes(tensor, 0, area * 4));
+        assertArrayEquals(bytes(writeReference(second, area), 0, area * 4), bytes(tensor, area * 4, area * 8));
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************
+ * @file NonMaxSuppressionTest.java
+ *
+ * @brief The greedy, per class and soft non maximum suppression on fixed boxes
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The expected greedy keep sets are the ones {@code Dnn.NMSBoxes} returns for the same boxes and thresholds, in its
+ * order. No OpenCV native library needed.
+ */
+public class NonMaxSuppressionTest {
+
+    private static final float SCORE_THRESHOLD = 0.3f;
+    private static final float NMS_THRESHOLD = NonMaxSuppression.NMS_THRESHOLD;
+
+    private final Detections detections = new Detections();
+
+    @Before
+    public void addBoxes() {
+        detections.add(0, 0, 100, 100, 0.9f, 0);
+        detections.add(10, 0, 100, 100, 0.8f, 0);      // iou 0.82 with #0
+        detections.add(200, 0, 100, 100, 0.7f, 1);
+        detections.add(0, 50, 100, 100, 0.85f, 1);     // iou 0.33 with #0, another class
+        detections.add(60, 0, 100, 100, 0.6f, 0);      // iou 0.25 with #0
+        detections.add(400, 400, 50, 50, 0.3f, 2);     // At the score threshold, never a candidate
+        detections.add(205, 5, 100, 100, 0.7f, 1);     // Same score as #2, which comes first, iou 0.82 with it
+        detections.add(500, 0, 80, 80, 0.4f, 0);
+    }
+
+    @Test
+    public void greedyKeepsWhatNmsBoxesKeeps() {
+        int[] kept = NonMaxSuppression.greedy(detections, SCORE_THRESHOLD, NMS_THRESHOLD, NonMaxSuppression.NO_TOP_K);
+        assertArrayEquals(new int[]{0, 2, 7}, kept);
+    }
+
+    @Test
+    public void perClassOnlySuppressesTheSameClass() {
+        int[] kept = NonMaxSuppression.perClass(detections, SCORE_THRESHOLD, NMS_THRESHOLD, NonMaxSuppression.NO_TOP_K);
+        assertArrayEquals(new int[]{0, 3, 2, 7}, kept);
+    }
+
+    @Test
+    public void perClassWithOneClassIsGreedy() {
+        for (int i = 0; i < detections.size(); i++) {
+            detections.setClassId(i, 1);
+        }
+        assertArrayEquals(NonMaxSuppression.greedy(detections, SCORE_THRESHOLD, NMS_THRESHOLD, NonMaxSuppression.NO_TOP_K),
+                NonMaxSuppression.perClass(detections, SCORE_THRESHOLD, NMS_THRESHOLD, NonMaxSuppression.NO_TOP_K));
+    }
+
+    @Test
+    public void topKVisitsOnlyTheHighestScores() {
+        // Like NMSBoxes the boxes are cut before the suppression, #2 and #7 aren't visited at all
+        assertArrayEquals(new int[]{0}, NonMaxSuppression.greedy(detections, SCORE_THRESHOLD, NMS_THRESHOLD, 2));
+        assertArrayEquals(new int[]{0, 2}, NonMaxSuppression.greedy(detections, SCORE_THRESHOLD, NMS_THRESHOLD, 4));
+        assertArrayEquals(new int[]{0, 3}, NonMaxSuppression.perClass(detections, SCORE_THRESHOLD, NMS_THRESHOLD, 2));
+    }
+
+    @Test
+    public void softNmsLowersTheScoresOfOverlappingBoxes() {
+        Detections soft = new Detections();
+        soft.add(0, 0, 100, 100, 0.9f, 0);
+        soft.add(50, 0, 100, 100, 0.8f, 0);     // iou 1/3, lowered to 0.64
+        soft.add(10, 0, 100, 100, 0.7f, 0);     // iou 0.82, lowered to 0.18, below the minimum score
+        soft.add(0, 0, 100, 100, 0.75f, 1);     // Another class
+        float lowered = 0.8f * (float) Math.exp(-square(soft.overlap(0, 1)) / NonMaxSuppression.SOFT_NMS_SIGMA);
+
+        int[] kept = NonMaxSuppression.soft(soft, true, 0.1f, NonMaxSuppression.SOFT_NMS_SIGMA,
+                NonMaxSuppression.SOFT_NMS_MIN_SCORE, NonMaxSuppression.NO_TOP_K);
+        assertArrayEquals(new int[]{0, 3, 1}, kept);
+        assertEquals(0.9f, soft.score(0), 0);
+        assertEquals(0.75f, soft.score(3), 0);
+        assertEquals(lowered, soft.score(1), 0);
+        assertEquals(0.8f * 0.8007f, lowered, 1e-4f);
+    }
+
+    @Test
+    public void softNmsDropsBoxesAtTheMinimumScore() {
+        Detections soft = new Detections();
+        soft.add(0, 0, 100, 100, 0.9f, 0);
+        soft.add(10, 0, 100, 100, 0.7f, 0);
+        float lowered = 0.7f * (float) Math.exp(-square(soft.overlap(0, 1)) / NonMaxSuppression.SOFT_NMS_SIGMA);
+
+        // Above the score threshold but not above the floor
+        assertArrayEquals(new int[]{0}, NonMaxSuppression.soft(copy(soft), false, 0.1f, NonMaxSuppression.SOFT_NMS_SIGMA,
+                NonMaxSuppression.SOFT_NMS_MIN_SCORE, NonMaxSuppression.NO_TOP_K));
+        assertArrayEquals(new int[]{0}, NonMaxSuppression.soft(copy(soft), false, 0.1f, NonMaxSuppression.SOFT_NMS_SIGMA,
+                lowered, NonMaxSuppression.NO_TOP_K));
+        assertArrayEquals(new int[]{0, 1}, NonMaxSuppression.soft(copy(soft), false, 0.1f, NonMaxSuppression.SOFT_NMS_SIGMA,
+                Math.nextDown(lowered), NonMaxSuppression.NO_TOP_K));
+    }
+
+    @Test
+    public void softNmsHonoursTheTopK() {
+        assertArrayEquals(new int[]{0, 2, 3, 4, 7}, NonMaxSuppression.soft(copy(detections), false, SCORE_THRESHOLD,
+                NonMaxSuppression.SOFT_NMS_SIGMA, NonMaxSuppression.SOFT_NMS_MIN_SCORE, NonMaxSuppression.NO_TOP_K));
+        // Only #0, #3 and #1 are visited, #1 falls below the minimum score
+        assertArrayEquals(new int[]{0, 3}, NonMaxSuppression.soft(copy(detections), false, SCORE_THRESHOLD,
+                NonMaxSuppression.SOFT_NMS_SIGMA, NonMaxSuppression.SOFT_NMS_MIN_SCORE, 3));
+    }
+
+    private static float square(float value) {
+        return value * value;
+    }
+
+    private static Detections copy(Detections detections) {
+        int[] all = new int[detections.size()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        Detections copy = new Detections();
+        copy.addAll(detections, all);
+        return copy;
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************
+ * @file YoloPostProcessorTest.java
+ *
+ * @brief Replays a recorded yolo output through the decoding and the non maximum suppression
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StreamTokenizer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@code yolo_two_layers.txt} holds two output layers of a 5 class network in the recording format: a line with
+ * {@code rows cols} followed by {@code rows * cols} floats, e.g. the {@code forward()} outputs written with numpy.
+ * The rows cover a duplicate box, a device of another class in front of it, a tie between two class scores,
+ * a box cut off at the frame border and rows at or below the confidence threshold.
+ */
+public class YoloPostProcessorTest {
+
+    private static final float CONF_THRESHOLD = 0.5f;
+    private static final int FRAME_COLS = 1080;
+    private static final int FRAME_ROWS = 1440;
+
+    private final Detections candidates = new Detections();
+
+    @Before
+    public void replayRecording() throws IOException {
+        try (InputStream recording = getClass().getClassLoader().getResourceAsStream("yolo_two_layers.txt")) {
+            StreamTokenizer tokens = new StreamTokenizer(new BufferedReader(new InputStreamReader(recording, "UTF-8")));
+            tokens.resetSyntax();
+            tokens.wordChars('!', '~');
+            tokens.whitespaceChars(0, ' ');
+            int[] added = new int[2];
+            int level = 0;
+            while (tokens.nextToken() != StreamTokenizer.TT_EOF) {
+                int rows = Integer.parseInt(tokens.sval);
+                int cols = Integer.parseInt(next(tokens));
+                float[] data = new float[rows * cols];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = Float.parseFloat(next(tokens));
+                }
+                added[level++] = YoloPostProcessor.decode(data, rows, cols, cols - YoloPostProcessor.SCORES_OFFSET,
+                        CONF_THRESHOLD, FRAME_COLS, FRAME_ROWS, candidates);
+            }
+            assertArrayEquals("candidates per layer", new int[]{3, 3}, added);
+        }
+    }
+
+    private static String next(StreamTokenizer tokens) throws IOException {
+        if (tokens.nextToken() == StreamTokenizer.TT_EOF) {
+            throw new IOException("Recording ends in the middle of a layer");
+        }
+        return tokens.sval;
+    }
+
+    private void assertCandidate(int i, int classId, float score, int x, int y, int width, int height) {
+        assertEquals("class of #" + i, classId, candidates.classId(i));
+        assertEquals("score of #" + i, score, candidates.score(i), 0);
+        assertArrayEquals("box of #" + i, new int[]{x, y, width, height},
+                new int[]{candidates.x(i), candidates.y(i), candidates.width(i), candidates.height(i)});
+    }
+
+    @Test
+    public void decodesTheBoxesAboveTheThreshold() {
+        assertEquals(6, candidates.size());
+        assertCandidate(0, 1, 0.875f, 405, 630, 270, 180);
+        assertCandidate(1, 1, 0.75f, 421, 630, 270, 180);          // The same device a few pixels to the right
+        assertCandidate(2, 2, 0.625f, 472, 675, 270, 180);         // Another device in front of it
+        assertCandidate(3, 4, 0.9375f, 203, 1035, 135, 90);
+        assertCandidate(4, 0, 0.6875f, 877, 0, 203, 360);          // Clipped at the top right corner
+        assertCandidate(5, 0, 0.5625f, 405, 630, 270, 180);        // Tie between class 0 and 1, the first one wins
+    }
+
+    @Test
+    public void keepsOneBoxPerPlaceRegardlessOfTheClass() {
+        int[] kept = YoloPostProcessor.suppress(candidates, CONF_THRESHOLD, NonMaxSuppression.NMS_THRESHOLD, false,
+                NonMaxSuppression.NO_TOP_K);
+        assertArrayEquals(new int[]{3, 0, 4}, kept);
+    }
+
+    @Test
+    public void perClassKeepsOverlappingDevicesOfDifferentClasses() {
+        int[] kept = YoloPostProcessor.suppress(candidates, CONF_THRESHOLD, NonMaxSuppression.NMS_THRESHOLD, true,
+                NonMaxSuppression.NO_TOP_K);
+        assertArrayEquals(new int[]{3, 0, 4, 2, 5}, kept);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRowsThatDontMatchTheClasses() {
+        YoloPostProcessor.decode(new float[10], 1, 10, 4, CONF_THRESHOLD, FRAME_COLS, FRAME_ROWS, new Detections());
+    }
+}
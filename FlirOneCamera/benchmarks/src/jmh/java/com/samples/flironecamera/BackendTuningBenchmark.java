@@ -0,0 +1,126 @@
+/*******************************************************************
+ * @file BackendTuningBenchmark.java
+ *
+ * @brief Forward pass time of the yolo net for every dnn backend, target and fusion setting
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a yolo net from a darknet cfg and weights and times {@code setInput} plus {@code forward} with each
+ * {@link DnnTuner.Config}, which is what the {@link DnnTuner} compares on the phone. Before a configuration is timed
+ * the tuner checks its outputs against the CPU reference, a configuration that fails or differs stops the run.
+ * <p/>
+ * The model isn't in the repository, its files are passed to the JMH jar ({@code ./gradlew :benchmarks:jmhJar}):
+ * {@code -p cfg=<file> -p weights=<file>}, optionally {@code -p frame=<recorded image>} and
+ * {@code -p config=<Config.encode() values>} for other candidates than the CPU ones, e.g. {@code 3,1,true} for OpenCL.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackendTuningBenchmark {
+
+    /**
+     * The darknet files of the net, not in the repository
+     */
+    @Param("")
+    public String cfg;
+
+    @Param("")
+    public String weights;
+
+    /**
+     * A recorded frame, random pixels if empty
+     */
+    @Param("")
+    public String frame;
+
+    /**
+     * {@link DnnTuner#CPU_CANDIDATES}
+     */
+    @Param({"0,0,true", "0,0,false", "3,0,true", "3,0,false"})
+    public String config;
+
+    private final List<Mat> outputs = new ArrayList<>();
+    private Net net;
+    private Mat blob;
+    private List<String> outputNames;
+
+    @Setup
+    public void createNet() throws IOException {
+        if (cfg.isEmpty() || weights.isEmpty()) {
+            throw new IllegalArgumentException("Pass the model to the JMH jar with -p cfg=<file> -p weights=<file>");
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        NetworkDescriptor descriptor;
+        try (Reader reader = new InputStreamReader(new FileInputStream(cfg), "UTF-8")) {
+            descriptor = NetworkDescriptor.parse(reader, Collections.<String>emptyList());
+        }
+        net = Dnn.readNetFromDarknet(cfg, weights);
+        outputNames = net.getUnconnectedOutLayersNames();
+        Mat image = frame.isEmpty() ? null : Imgcodecs.imread(frame);
+        blob = DnnTuner.inputBlob(image, descriptor.withOutputNames(outputNames));
+        if (image != null) {
+            image.release();
+        }
+        DnnTuner.Config candidate = DnnTuner.Config.decode(config);
+        if (candidate == null) {
+            throw new IllegalArgumentException("Not a backend,target,fusion triple: " + config);
+        }
+        DnnTuner tuner = new DnnTuner(1);
+        if (tuner.tune(net, blob, outputNames, Collections.singletonList(candidate)) != candidate) {
+            throw new IllegalStateException(tuner.getReport());
+        }
+    }
+
+    @TearDown
+    public void releaseNet() {
+        release();
+        blob.release();
+    }
+
+    @Benchmark
+    public int forward() {
+        release();
+        net.setInput(blob);
+        net.forward(outputs, outputNames);
+        return outputs.size();
+    }
+
+    private void release() {
+        for (Mat output : outputs) {
+            output.release();
+        }
+        outputs.clear();
+    }
+}
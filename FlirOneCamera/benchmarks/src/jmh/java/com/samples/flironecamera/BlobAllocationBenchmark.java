@@ -0,0 +1,93 @@
+/*******************************************************************
+ * @file BlobAllocationBenchmark.java
+ *
+ * @brief The per frame cost of building the yolo input blob
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the yolo input blob from a random camera sized frame with {@code Dnn.blobFromImage} and with the
+ * {@link BlobPreprocessor}. Run with {@code -prof gc} to see the Java heap allocated per frame. The blob memory of
+ * {@code blobFromImage} is native, so it doesn't show up in the heap numbers, only in the time.
+ * The setup checks that both produce the same blob.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlobAllocationBenchmark {
+
+    private static final float SCALE = 0.00392f;
+    private static final int FRAME_COLS = 1080;
+    private static final int FRAME_ROWS = 1440;
+
+    @Param({"416"})
+    public int inputSize;
+
+    private final BlobPreprocessor preprocessor = new BlobPreprocessor(SCALE);
+    private Mat frame;
+    private Size size;
+
+    @Setup
+    public void createFrame() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        frame = new Mat(FRAME_ROWS, FRAME_COLS, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+        size = new Size(inputSize, inputSize);
+        checkSameBlob();
+    }
+
+    @TearDown
+    public void releaseFrame() {
+        frame.release();
+    }
+
+    @Benchmark
+    public void blobFromImage() {
+        Dnn.blobFromImage(frame, SCALE, size, new Scalar(0, 0, 0), false, false).release();
+    }
+
+    @Benchmark
+    public Mat reused() {
+        return preprocessor.prepare(frame, inputSize, inputSize);
+    }
+
+    /**
+     * Both have to build the same blob, otherwise the comparison is meaningless
+     */
+    private void checkSameBlob() {
+        Mat expected = Dnn.blobFromImage(frame, SCALE, size, new Scalar(0, 0, 0), false, false);
+        Mat diff = new Mat();
+        Core.absdiff(expected.reshape(1, 1), reused().reshape(1, 1), diff);
+        double difference = Core.minMaxLoc(diff).maxVal;
+        expected.release();
+        diff.release();
+        if (difference != 0) {
+            throw new IllegalStateException("BlobPreprocessor differs from blobFromImage by up to " + difference);
+        }
+    }
+}
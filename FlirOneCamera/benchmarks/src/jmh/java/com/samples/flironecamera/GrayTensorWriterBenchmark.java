@@ -0,0 +1,102 @@
+/*******************************************************************
+ * @file GrayTensorWriterBenchmark.java
+ *
+ * @brief The bulk copy GrayTensorWriter against reading the crop pixel by pixel
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one on/off classifier crop (145x152, CV_8UC3) into the input tensor once with {@link GrayTensorWriter} and
+ * once with the loop the classifier used before, a {@code modelInput.get(k, l)} per pixel.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrayTensorWriterBenchmark {
+
+    // OnOffClassifier.INPUT_HEIGHT and INPUT_WIDTH, the classifier itself uses the Android API
+    private static final int ROWS = 145;
+    private static final int COLS = 152;
+
+    private final GrayTensorWriter writer = new GrayTensorWriter();
+    private final ByteBuffer tensor = ByteBuffer.allocateDirect(ROWS * COLS * 4).order(ByteOrder.nativeOrder());
+    private Mat modelInput;
+
+    @Setup
+    public void createCrop() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        byte[] pixels = new byte[ROWS * COLS * 3];
+        new Random(42).nextBytes(pixels);
+        modelInput = new Mat(ROWS, COLS, CvType.CV_8UC3);
+        modelInput.put(0, 0, pixels);
+        checkSameFloats();
+    }
+
+    @TearDown
+    public void releaseCrop() {
+        modelInput.release();
+    }
+
+    @Benchmark
+    public ByteBuffer bulkCopy() {
+        tensor.clear();
+        writer.write(modelInput, tensor);
+        return tensor;
+    }
+
+    @Benchmark
+    public ByteBuffer perPixel() {
+        tensor.clear();
+        for (int k = 0; k < modelInput.height(); k++)
+            for (int l = 0; l < modelInput.width(); l++) {
+                double[] pixel = modelInput.get(k, l);
+                float red = (float) (((float) pixel[0]) / 255.0);
+                float green = (float) (((float) pixel[1]) / 255.0);
+                float blue = (float) (((float) pixel[2]) / 255.0);
+                tensor.putFloat((red + green + blue) / 3);
+            }
+        return tensor;
+    }
+
+    /**
+     * Both loops have to write the same tensor, otherwise the comparison is meaningless
+     */
+    private void checkSameFloats() {
+        byte[] perPixel = new byte[tensor.capacity()];
+        byte[] bulk = new byte[tensor.capacity()];
+        perPixel();
+        tensor.flip();
+        tensor.get(perPixel);
+        bulkCopy();
+        tensor.flip();
+        tensor.get(bulk);
+        if (!Arrays.equals(perPixel, bulk)) {
+            throw new IllegalStateException("GrayTensorWriter wrote different floats than the per pixel loop");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************
+ * @file NmsBenchmark.java
+ *
+ * @brief The Java non maximum suppression against Dnn.NMSBoxes
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.dnn.Dnn;
+import org.opencv.utils.Converters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times {@link NonMaxSuppression} on {@link Detections} against the old path of the postprocess stage: boxed lists
+ * converted with {@code MatOfRect} and {@code Converters.vector_float_to_Mat} and suppressed by {@code Dnn.NMSBoxes}.
+ * {@code Dnn.NMSBoxes} is also fed from primitive arrays through the array overloads of {@code Converters} into
+ * reused Mats, which leaves only the JNI call. The boxes are random clusters around a few devices like the yolo
+ * candidates of a frame. The setup checks that all three keep the same boxes.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NmsBenchmark {
+
+    private static final float SCORE_THRESHOLD = 0.3f;
+    private static final float NMS_THRESHOLD = NonMaxSuppression.NMS_THRESHOLD;
+
+    @Param({"10", "50", "200", "1000"})
+    public int count;
+
+    private final Detections detections = new Detections();
+    private final Detections softCopy = new Detections();
+    private final List<Rect> rects = new ArrayList<>();
+    private final List<Float> confs = new ArrayList<>();
+    private MatOfRect reusedBoxes;
+    private MatOfFloat reusedScores;
+    private MatOfInt reusedIndices;
+    private int[] boxArray;
+    private float[] confArray;
+    private int[] all;
+
+    @Setup
+    public void createBoxes() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        reusedBoxes = new MatOfRect();
+        reusedScores = new MatOfFloat();
+        reusedIndices = new MatOfInt();
+        Random random = new Random(42);
+        boxArray = new int[4 * count];
+        confArray = new float[count];
+        all = new int[count];
+        for (int i = 0; i < count; i++) {
+            int device = random.nextInt(Math.max(1, count / 10));
+            int x = (device * 137) % 900 + random.nextInt(40);
+            int y = (device * 311) % 1200 + random.nextInt(40);
+            Rect box = new Rect(x, y, 120 + random.nextInt(30), 160 + random.nextInt(30));
+            float score = random.nextFloat();
+            detections.add(box, score, random.nextInt(5));
+            rects.add(box);
+            confs.add(score);
+            boxArray[4 * i] = box.x;
+            boxArray[4 * i + 1] = box.y;
+            boxArray[4 * i + 2] = box.width;
+            boxArray[4 * i + 3] = box.height;
+            confArray[i] = score;
+            all[i] = i;
+        }
+        int[] java = greedy();
+        int[] fromLists = nmsBoxesLists();
+        int[] fromArrays = nmsBoxesArrays();
+        if (!Arrays.equals(java, fromLists) || !Arrays.equals(java, fromArrays)) {
+            throw new IllegalStateException("Java kept " + Arrays.toString(java) + ", NMSBoxes " + Arrays.toString(fromLists)
+                    + ", NMSBoxes from arrays " + Arrays.toString(fromArrays));
+        }
+    }
+
+    @TearDown
+    public void releaseMats() {
+        reusedBoxes.release();
+        reusedScores.release();
+        reusedIndices.release();
+    }
+
+    @Benchmark
+    public int[] greedy() {
+        return NonMaxSuppression.greedy(detections, SCORE_THRESHOLD, NMS_THRESHOLD, NonMaxSuppression.NO_TOP_K);
+    }
+
+    @Benchmark
+    public int[] perClass() {
+        return NonMaxSuppression.perClass(detections, SCORE_THRESHOLD, NMS_THRESHOLD, NonMaxSuppression.NO_TOP_K);
+    }
+
+    @Benchmark
+    public int[] top100() {
+        return NonMaxSuppression.greedy(detections, SCORE_THRESHOLD, NMS_THRESHOLD, 100);
+    }
+
+    @Benchmark
+    public int[] soft() {
+        softCopy.clear();       // Soft-NMS lowers the scores, every run starts from the original ones
+        softCopy.addAll(detections, all);
+        return NonMaxSuppression.soft(softCopy, false, SCORE_THRESHOLD, NonMaxSuppression.SOFT_NMS_SIGMA,
+                NonMaxSuppression.SOFT_NMS_MIN_SCORE, NonMaxSuppression.NO_TOP_K);
+    }
+
+    /**
+     * What the postprocess stage did before
+     */
+    @Benchmark
+    public int[] nmsBoxesLists() {
+        MatOfRect boxes = new MatOfRect();
+        boxes.fromList(rects);
+        MatOfFloat scores = new MatOfFloat(Converters.vector_float_to_Mat(confs));
+        MatOfInt indices = new MatOfInt();
+        Dnn.NMSBoxes(boxes, scores, SCORE_THRESHOLD, NMS_THRESHOLD, indices);
+        int[] kept = indices.toArray();
+        boxes.release();
+        scores.release();
+        indices.release();
+        return kept;
+    }
+
+    /**
+     * The same from primitive arrays into reused Mats
+     */
+    @Benchmark
+    public int[] nmsBoxesArrays() {
+        Converters.vector_Rect_to_Mat(boxArray, count, reusedBoxes);
+        Converters.vector_float_to_Mat(confArray, count, reusedScores);
+        Dnn.NMSBoxes(reusedBoxes, reusedScores, SCORE_THRESHOLD, NMS_THRESHOLD, reusedIndices);
+        return Converters.Mat_to_vector_int(reusedIndices);
+    }
+}
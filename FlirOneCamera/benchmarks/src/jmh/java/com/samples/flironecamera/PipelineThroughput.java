@@ -0,0 +1,109 @@
+/*******************************************************************
+ * @file PipelineThroughput.java
+ *
+ * @brief Throughput of the FramePipeline against running the stages one after another
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the six stages of the detection pipeline (ingest, align/fuse, detect, postprocess, classify, render) with
+ * simulated latencies, once with a thread per stage and once as a single stage that sleeps for all of them.
+ * One operation is one finished frame and every finished frame is replaced by a new one, so the pipeline stays full
+ * and the score is the frame rate. Only needs a JVM, no camera or Android device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineThroughput {
+
+    private static final String[] STAGE_NAMES = {"ingest", "alignFuse", "detect", "postprocess", "classify", "render"};
+
+    /**
+     * Latency of each stage in milliseconds, in stage order
+     */
+    @Param({"4,12,45,2,25,10"})
+    public String latencies;
+
+    @Param({"true", "false"})
+    public boolean pipelined;
+
+    private final Semaphore finished = new Semaphore(0);
+    private final AtomicLong failed = new AtomicLong();
+    private FramePipeline<Long> pipeline;
+    private long frameNumber = 0;
+
+    @Setup
+    public void start() throws InterruptedException {
+        String[] values = latencies.split(",");
+        long[] millis = new long[STAGE_NAMES.length];
+        for (int i = 0; i < millis.length && i < values.length; i++) {
+            millis[i] = Long.parseLong(values[i].trim());
+        }
+        pipeline = new FramePipeline<>(2);
+        if (pipelined) {
+            for (int i = 0; i < STAGE_NAMES.length; i++) {
+                final long latency = millis[i];
+                pipeline.addStage(STAGE_NAMES[i], frame -> Thread.sleep(latency));
+            }
+        } else {
+            pipeline.addStage("sequential", frame -> {
+                for (long latency : millis) {
+                    Thread.sleep(latency);
+                }
+            });
+        }
+        pipeline.start(new FramePipeline.Sink<Long>() {
+            @Override
+            public void onFrame(Long frame) {
+                finished.release();
+            }
+
+            @Override
+            public void onError(String stageName, Long frame, Exception e) {
+                failed.incrementAndGet();
+                finished.release();
+            }
+
+            @Override
+            public void onDropped(Long frame) {
+            }
+        });
+        for (int i = 0; i < STAGE_NAMES.length; i++) {     // One frame per stage, the first submits return right away
+            pipeline.submit(frameNumber++);
+        }
+    }
+
+    @Benchmark
+    public void frame() throws InterruptedException {
+        finished.acquire();
+        pipeline.submit(frameNumber++);
+    }
+
+    @TearDown
+    public void stop() {
+        pipeline.stop();
+        if (failed.get() > 0) {
+            throw new IllegalStateException(failed.get() + " frames failed");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************
+ * @file TiledLatencyBenchmark.java
+ *
+ * @brief The detection latency per number of tiles
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the yolo net on a random camera sized frame without tiles and with the {@link DetectionTiles} grids, and times
+ * preparing the blob, the forward pass, the decoding and the non maximum suppression of one frame. Compared with the
+ * time between two camera frames this shows if a device has the headroom for the tiled mode, so the numbers only
+ * mean something on the phone's CPU class of hardware.
+ * <p/>
+ * The model isn't in the repository, its files are passed to the JMH jar ({@code ./gradlew :benchmarks:jmhJar}):
+ * {@code -p cfg=<file> -p weights=<file>}.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TiledLatencyBenchmark {
+
+    private static final float CONF_THRESHOLD = 0.5f;
+    private static final int FRAME_COLS = 1080;
+    private static final int FRAME_ROWS = 1440;
+
+    /**
+     * The darknet files of the net, not in the repository
+     */
+    @Param("")
+    public String cfg;
+
+    @Param("")
+    public String weights;
+
+    /**
+     * Tiles per row and column besides the whole frame, 0 for the whole frame alone
+     */
+    @Param({"0", "2", "3"})
+    public int grid;
+
+    private final BlobPreprocessor preprocessor = new BlobPreprocessor(0.00392f);
+    private final YoloDecoder decoder = new YoloDecoder();
+    private final List<Mat> outputs = new ArrayList<>();
+    private final Detections candidates = new Detections();
+    private NetworkDescriptor descriptor;
+    private Net net;
+    private Mat frame;
+    private List<Rect> tiles;
+
+    @Setup
+    public void createNet() throws IOException {
+        if (cfg.isEmpty() || weights.isEmpty()) {
+            throw new IllegalArgumentException("Pass the model to the JMH jar with -p cfg=<file> -p weights=<file>");
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        try (Reader reader = new InputStreamReader(new FileInputStream(cfg), "UTF-8")) {
+            descriptor = NetworkDescriptor.parse(reader, Collections.<String>emptyList());
+        }
+        net = Dnn.readNetFromDarknet(cfg, weights);
+        descriptor = descriptor.withOutputNames(net.getUnconnectedOutLayersNames());
+        frame = new Mat(FRAME_ROWS, FRAME_COLS, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+        tiles = grid == 0 ? null : DetectionTiles.grid(FRAME_COLS, FRAME_ROWS, grid);
+    }
+
+    @TearDown
+    public void releaseFrame() {
+        release();
+        frame.release();
+    }
+
+    @Benchmark
+    public int detect() {
+        release();
+        candidates.clear();
+        if (tiles == null) {
+            net.setInput(preprocessor.prepare(frame, descriptor.inputWidth, descriptor.inputHeight));
+            net.forward(outputs, descriptor.outputNames);
+            decoder.decode(outputs, descriptor.classes, CONF_THRESHOLD, FRAME_COLS, FRAME_ROWS, candidates);
+        } else {
+            net.setInput(preprocessor.prepare(frame, tiles, descriptor.inputWidth, descriptor.inputHeight));
+            net.forward(outputs, descriptor.outputNames);
+            decoder.decode(outputs, tiles, descriptor.classes, CONF_THRESHOLD, candidates);
+        }
+        return YoloPostProcessor.suppress(candidates, CONF_THRESHOLD, NonMaxSuppression.NMS_THRESHOLD, false,
+                NonMaxSuppression.NO_TOP_K).length;
+    }
+
+    private void release() {
+        for (Mat output : outputs) {
+            output.release();
+        }
+        outputs.clear();
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************
+ * @file YoloDecoderBenchmark.java
+ *
+ * @brief The bulk copy YoloDecoder against reading the output layers row by row
+ ********************************************************************/
+package com.samples.flironecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the two output layers of yolov3-tiny (13x13 and 26x26 cells with 3 anchors each, 5 classes) once with
+ * {@link YoloDecoder} and once with the loop the postprocess stage used before: {@code row()}, {@code colRange()},
+ * {@code Core.minMaxLoc()} and four {@code get()} calls per anchor, boxes collected in lists.
+ * The row and score headers of the old loop are released right away instead of being left to the finalizer.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YoloDecoderBenchmark {
+
+    private static final int CLASSES = 5;
+    private static final int FRAME_COLS = 1080;
+    private static final int FRAME_ROWS = 1440;
+    private static final float CONF_THRESHOLD = 0.5f;
+
+    /**
+     * Share of the anchors above the confidence threshold
+     */
+    @Param({"0.01", "0.1"})
+    public double detectedShare;
+
+    private final List<Mat> outputs = new ArrayList<>();
+    private final YoloDecoder decoder = new YoloDecoder();
+    private final Detections candidates = new Detections();
+
+    @Setup
+    public void createOutputs() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        Random random = new Random(42);
+        for (int cells : new int[]{13, 26}) {
+            int rows = cells * cells * 3;
+            int cols = YoloPostProcessor.SCORES_OFFSET + CLASSES;
+            float[] data = new float[rows * cols];
+            for (int r = 0; r < rows; r++) {
+                int row = r * cols;
+                for (int c = 0; c < YoloPostProcessor.SCORES_OFFSET; c++) {
+                    data[row + c] = random.nextFloat();
+                }
+                for (int c = YoloPostProcessor.SCORES_OFFSET; c < cols; c++) {
+                    data[row + c] = random.nextFloat() * CONF_THRESHOLD;
+                }
+                if (random.nextDouble() < detectedShare) {
+                    data[row + YoloPostProcessor.SCORES_OFFSET + random.nextInt(CLASSES)] = CONF_THRESHOLD + random.nextFloat() * 0.5f;
+                }
+            }
+            Mat level = new Mat(rows, cols, CvType.CV_32FC1);
+            level.put(0, 0, data);
+            outputs.add(level);
+        }
+        checkSameCandidates();
+    }
+
+    @TearDown
+    public void releaseOutputs() {
+        for (Mat level : outputs) {
+            level.release();
+        }
+    }
+
+    @Benchmark
+    public int bulkCopy() {
+        candidates.clear();
+        return decoder.decode(outputs, CLASSES, CONF_THRESHOLD, FRAME_COLS, FRAME_ROWS, candidates);
+    }
+
+    @Benchmark
+    public int perRow() {
+        List<Float> confs = new ArrayList<>();
+        List<Rect> rects = new ArrayList<>();
+        List<Integer> classIds = new ArrayList<>();
+        decodeRowByRow(confs, rects, classIds);
+        return confs.size();
+    }
+
+    private void decodeRowByRow(List<Float> confs, List<Rect> rects, List<Integer> classIds) {
+        for (Mat level : outputs) {
+            for (int j = 0; j < level.rows(); ++j) {
+                Mat row = level.row(j);
+                Mat scores = row.colRange(YoloPostProcessor.SCORES_OFFSET, level.cols());
+                Core.MinMaxLocResult mm = Core.minMaxLoc(scores);
+                float confidence = (float) mm.maxVal;
+                if (confidence > CONF_THRESHOLD) {
+                    int width = (int) (row.get(0, 2)[0] * FRAME_COLS);
+                    int height = (int) (row.get(0, 3)[0] * FRAME_ROWS);
+                    int left = (int) (row.get(0, 0)[0] * FRAME_COLS) - width / 2;
+                    int top = (int) (row.get(0, 1)[0] * FRAME_ROWS) - height / 2;
+                    left = Math.min(Math.max(left, 0), FRAME_COLS);
+                    top = Math.min(Math.max(top, 0), FRAME_ROWS);
+                    width = Math.min(Math.max(width, 0), FRAME_COLS - left);
+                    height = Math.min(Math.max(height, 0), FRAME_ROWS - top);
+                    confs.add(confidence);
+                    rects.add(new Rect(left, top, width, height));
+                    classIds.add((int) mm.maxLoc.x);
+                }
+                scores.release();
+                row.release();
+            }
+        }
+    }
+
+    /**
+     * Both decoders have to find the same boxes, otherwise the comparison is meaningless
+     */
+    private void checkSameCandidates() {
+        List<Float> confs = new ArrayList<>();
+        List<Rect> rects = new ArrayList<>();
+        List<Integer> classIds = new ArrayList<>();
+        decodeRowByRow(confs, rects, classIds);
+        bulkCopy();
+        if (candidates.size() != confs.size()) {
+            throw new IllegalStateException("bulk copy found " + candidates.size() + " candidates, the row by row loop " + confs.size());
+        }
+        for (int i = 0; i < confs.size(); i++) {
+            if (candidates.score(i) != confs.get(i) || !candidates.rect(i).equals(rects.get(i)) || candidates.classId(i) != classIds.get(i)) {
+                throw new IllegalStateException("candidate " + i + " differs: " + candidates.rect(i) + " class " + candidates.classId(i)
+                        + " instead of " + rects.get(i) + " class " + classIds.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.opencv.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads every value of a yolo output sized CV_32FC1 Mat (507x85) and of a classifier crop sized CV_8UC3 Mat (64x64)
+ * with {@code Mat.get(row, col)}, which returns a new {@code double[]} per element, with the allocation free
+ * {@code getFloat} / {@code getByte}, with a reused {@link Mat.RowCursor} and with one bulk copy. The setup checks
+ * that all paths read the same values. Run with {@code -prof gc} to see the Java heap allocated per pass.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatAccessBenchmark {
+
+    private static final int OUTPUT_ROWS = 507;
+    private static final int OUTPUT_COLS = 85;
+    private static final int CROP_SIZE = 64;
+
+    private Mat output;
+    private Mat crop;
+    private Mat.RowCursor outputCursor;
+    private Mat.RowCursor cropCursor;
+    private final float[] floats = new float[OUTPUT_ROWS * OUTPUT_COLS];
+    private final byte[] bytes = new byte[CROP_SIZE * CROP_SIZE * 3];
+
+    @Setup
+    public void createMats() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        output = new Mat(OUTPUT_ROWS, OUTPUT_COLS, CvType.CV_32FC1);
+        Core.randu(output, 0, 1);
+        crop = new Mat(CROP_SIZE, CROP_SIZE, CvType.CV_8UC3);
+        Core.randu(crop, 0, 256);
+        outputCursor = output.rowCursor();
+        cropCursor = crop.rowCursor();
+        checkSameSums(floatsByGet(), floatsByGetFloat(), floatsByCursor(), floatsByBulk());
+        checkSameSums(bytesByGet(), bytesByGetByte(), bytesByCursor(), bytesByBulk());
+    }
+
+    @TearDown
+    public void releaseMats() {
+        output.release();
+        crop.release();
+    }
+
+    @Benchmark
+    public double floatsByGet() {
+        double total = 0;
+        for (int r = 0; r < output.rows(); r++) {
+            for (int c = 0; c < output.cols(); c++) {
+                total += (float) output.get(r, c)[0];
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double floatsByGetFloat() {
+        double total = 0;
+        for (int r = 0; r < output.rows(); r++) {
+            for (int c = 0; c < output.cols(); c++) {
+                total += output.getFloat(r, c);
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double floatsByCursor() {
+        double total = 0;
+        outputCursor.reset();
+        while (outputCursor.next()) {
+            float[] row = outputCursor.floats();
+            for (int i = 0; i < outputCursor.length(); i++) {
+                total += row[i];
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double floatsByBulk() {
+        output.get(0, 0, floats);
+        double total = 0;
+        for (float value : floats) {
+            total += value;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double bytesByGet() {
+        double total = 0;
+        for (int r = 0; r < crop.rows(); r++) {
+            for (int c = 0; c < crop.cols(); c++) {
+                double[] pixel = crop.get(r, c);
+                total += pixel[0] + pixel[1] + pixel[2];
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double bytesByGetByte() {
+        double total = 0;
+        for (int r = 0; r < crop.rows(); r++) {
+            for (int c = 0; c < crop.cols(); c++) {
+                total += (crop.getByte(r, c, 0) & 0xFF) + (crop.getByte(r, c, 1) & 0xFF) + (crop.getByte(r, c, 2) & 0xFF);
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double bytesByCursor() {
+        double total = 0;
+        cropCursor.reset();
+        while (cropCursor.next()) {
+            byte[] row = cropCursor.bytes();
+            for (int i = 0; i < cropCursor.length(); i++) {
+                total += row[i] & 0xFF;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double bytesByBulk() {
+        crop.get(0, 0, bytes);
+        double total = 0;
+        for (byte value : bytes) {
+            total += value & 0xFF;
+        }
+        return total;
+    }
+
+    private static void checkSameSums(double byGet, double byElement, double byCursor, double byBulk) {
+        if (byGet != byElement || byGet != byCursor || byGet != byBulk) {
+            throw new IllegalStateException("The read paths disagree: " + byGet + ", " + byElement + ", " + byCursor + ", " + byBulk);
+        }
+    }
+}
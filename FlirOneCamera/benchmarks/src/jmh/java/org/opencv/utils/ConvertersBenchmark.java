@@ -0,0 +1,209 @@
+package org.opencv.utils;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts random floats, ints and rectangles between Java and a {@code Mat} with the boxing {@code List} methods of
+ * {@link Converters} and with their {@code float[]} / {@code int[]} / buffer overloads, into a new and into a reused
+ * {@code Mat}. Run with {@code -prof gc} to see the Java heap allocated per conversion, the round trips themselves
+ * are checked by {@code ConvertersTest}.
+ * Needs the desktop build of the OpenCV native library, see {@code benchmarks/build.gradle}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertersBenchmark {
+
+    @Param({"16", "256", "4096", "65536"})
+    public int size;
+
+    private float[] floats;
+    private int[] ints;
+    private int[] rects;
+    private final List<Float> floatList = new ArrayList<>();
+    private final List<Integer> intList = new ArrayList<>();
+    private final List<Rect> rectList = new ArrayList<>();
+    private final List<Float> floatsBack = new ArrayList<>();
+    private final List<Integer> intsBack = new ArrayList<>();
+    private final List<Rect> rectsBack = new ArrayList<>();
+    private FloatBuffer floatBuffer;
+    private FloatBuffer directFloats;
+    private IntBuffer intBuffer;
+    private float[] floatsOut;
+    private int[] intsOut;
+    private int[] rectsOut;
+    private FloatBuffer floatBufferOut;
+    private IntBuffer intBufferOut;
+    private Mat floatMat;
+    private Mat intMat;
+    private Mat rectMat;
+    private Mat reused;
+
+    @Setup
+    public void createValues() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        Random random = new Random(42);
+        floats = new float[size];
+        ints = new int[size];
+        rects = new int[4 * size];
+        for (int i = 0; i < size; i++) {
+            floats[i] = random.nextFloat();
+            ints[i] = random.nextInt();
+            Rect rect = new Rect(random.nextInt(1080), random.nextInt(1440), random.nextInt(200), random.nextInt(200));
+            rects[4 * i] = rect.x;
+            rects[4 * i + 1] = rect.y;
+            rects[4 * i + 2] = rect.width;
+            rects[4 * i + 3] = rect.height;
+            floatList.add(floats[i]);
+            intList.add(ints[i]);
+            rectList.add(rect);
+        }
+        floatBuffer = FloatBuffer.wrap(floats);
+        directFloats = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        directFloats.put(floats).flip();
+        intBuffer = IntBuffer.wrap(ints);
+        floatsOut = new float[size];
+        intsOut = new int[size];
+        rectsOut = new int[4 * size];
+        floatBufferOut = FloatBuffer.allocate(size);
+        intBufferOut = IntBuffer.allocate(size);
+        floatMat = Converters.vector_float_to_Mat(floats);
+        intMat = Converters.vector_int_to_Mat(ints);
+        rectMat = Converters.vector_Rect_to_Mat(rects);
+        reused = new Mat();
+    }
+
+    @TearDown
+    public void releaseMats() {
+        floatMat.release();
+        intMat.release();
+        rectMat.release();
+        reused.release();
+    }
+
+    @Benchmark
+    public void floatListToNewMat() {
+        Converters.vector_float_to_Mat(floatList).release();
+    }
+
+    @Benchmark
+    public void floatArrayToNewMat() {
+        Converters.vector_float_to_Mat(floats).release();
+    }
+
+    @Benchmark
+    public Mat floatArrayToReusedMat() {
+        return Converters.vector_float_to_Mat(floats, size, reused);
+    }
+
+    @Benchmark
+    public Mat floatBufferToReusedMat() {
+        return Converters.vector_float_to_Mat(floatBuffer, reused);
+    }
+
+    @Benchmark
+    public Mat directBufferToReusedMat() {
+        return Converters.vector_float_to_Mat(directFloats, reused);
+    }
+
+    @Benchmark
+    public List<Float> matToFloatList() {
+        Converters.Mat_to_vector_float(floatMat, floatsBack);
+        return floatsBack;
+    }
+
+    @Benchmark
+    public float[] matToFloatArray() {
+        Converters.Mat_to_vector_float(floatMat, floatsOut);
+        return floatsOut;
+    }
+
+    @Benchmark
+    public FloatBuffer matToFloatBuffer() {
+        floatBufferOut.clear();
+        Converters.Mat_to_vector_float(floatMat, floatBufferOut);
+        return floatBufferOut;
+    }
+
+    @Benchmark
+    public void intListToNewMat() {
+        Converters.vector_int_to_Mat(intList).release();
+    }
+
+    @Benchmark
+    public Mat intArrayToReusedMat() {
+        return Converters.vector_int_to_Mat(ints, size, reused);
+    }
+
+    @Benchmark
+    public Mat intBufferToReusedMat() {
+        return Converters.vector_int_to_Mat(intBuffer, reused);
+    }
+
+    @Benchmark
+    public List<Integer> matToIntList() {
+        Converters.Mat_to_vector_int(intMat, intsBack);
+        return intsBack;
+    }
+
+    @Benchmark
+    public int[] matToIntArray() {
+        Converters.Mat_to_vector_int(intMat, intsOut);
+        return intsOut;
+    }
+
+    @Benchmark
+    public IntBuffer matToIntBuffer() {
+        intBufferOut.clear();
+        Converters.Mat_to_vector_int(intMat, intBufferOut);
+        return intBufferOut;
+    }
+
+    @Benchmark
+    public void rectListToNewMat() {
+        Converters.vector_Rect_to_Mat(rectList).release();
+    }
+
+    @Benchmark
+    public Mat rectArrayToReusedMat() {
+        return Converters.vector_Rect_to_Mat(rects, size, reused);
+    }
+
+    @Benchmark
+    public List<Rect> matToRectList() {
+        Converters.Mat_to_vector_Rect(rectMat, rectsBack);
+        return rectsBack;
+    }
+
+    @Benchmark
+    public int[] matToRectArray() {
+        Converters.Mat_to_vector_Rect(rectMat, rectsOut);
+        return rectsOut;
+    }
+}
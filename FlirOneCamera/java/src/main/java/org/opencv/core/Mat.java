@@ -8,6 +8,16 @@ public class Mat {
 
     public final long nativeObj;
 
+    // Scratch arrays of the allocation free single element accessors, one pixel long, reused for the life of the Mat
+    private float[] floatScratch;
+    private int[] intScratch;
+    private byte[] byteScratch;
+    // Scratch arrays of the offset get/put overloads, kept apart so a long copy doesn't leave a large array behind
+    // for the single element accessors and the two never write into each other's array
+    private float[] floatCopyScratch;
+    private int[] intCopyScratch;
+    private byte[] byteCopyScratch;
+
     public Mat(long addr) {
         if (addr == 0)
             throw new UnsupportedOperationException("Native object address is NULL");
@@ -914,6 +924,41 @@ public class Mat {
         throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
     }
 
+    // javadoc:Mat::put(row,col,data,offset,length)
+    /**
+     * Copies length values of data from index offset into the Mat starting at (row, col), fewer if the Mat ends
+     * before. An offset other than 0 goes through a scratch array that is kept by the Mat, like
+     * {@link #get(int, int, float[], int, int)}.
+     *
+     * @return the number of bytes copied, like {@link #put(int, int, float[])}
+     */
+    public int put(int row, int col, float[] data, int offset, int length) {
+        int t = type();
+        checkRange(t, data == null ? 0 : data.length, offset, length);
+        if (CvType.depth(t) != CvType.CV_32F)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        if (offset == 0)
+            return nPutF(nativeObj, row, col, length, data);
+        if (floatCopyScratch == null || floatCopyScratch.length < length)
+            floatCopyScratch = new float[length];
+        System.arraycopy(data, offset, floatCopyScratch, 0, length);
+        return nPutF(nativeObj, row, col, length, floatCopyScratch);
+    }
+
+    // javadoc:Mat::put(row,col,data,offset,length)
+    public int put(int row, int col, int[] data, int offset, int length) {
+        int t = type();
+        checkRange(t, data == null ? 0 : data.length, offset, length);
+        if (CvType.depth(t) != CvType.CV_32S)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        if (offset == 0)
+            return nPutI(nativeObj, row, col, length, data);
+        if (intCopyScratch == null || intCopyScratch.length < length)
+            intCopyScratch = new int[length];
+        System.arraycopy(data, offset, intCopyScratch, 0, length);
+        return nPutI(nativeObj, row, col, length, intCopyScratch);
+    }
+
     // javadoc:Mat::put(row,col,data,offset,length)
     public int put(int row, int col, byte[] data, int offset, int length) {
         int t = type();
@@ -1118,6 +1163,286 @@ public class Mat {
         return nGetIdx(nativeObj, idx);
     }
 
+    // javadoc:Mat::getFloat(row,col,ch)
+    /**
+     * Reads one channel of a CV_32F element without allocating, unlike {@link #get(int, int)} which returns a new
+     * double[] per call. Still one JNI call per element, so loops over many elements should copy them in bulk with
+     * {@link #get(int, int, float[])} or a {@link RowCursor}. Not safe to call from several threads on the same Mat.
+     */
+    public float getFloat(int row, int col, int ch) {
+        int t = type();
+        if (CvType.depth(t) != CvType.CV_32F)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        checkChannel(t, ch);
+        if (floatScratch == null || floatScratch.length <= ch)
+            floatScratch = new float[CvType.channels(t)];
+        if (nGetF(nativeObj, row, col, ch + 1, floatScratch) == 0)
+            throw new IndexOutOfBoundsException("row " + row + ", col " + col + " is outside of " + this);
+        return floatScratch[ch];
+    }
+
+    // javadoc:Mat::getFloat(row,col)
+    public float getFloat(int row, int col) {
+        return getFloat(row, col, 0);
+    }
+
+    // javadoc:Mat::getInt(row,col,ch)
+    /**
+     * Reads one channel of a CV_32S element without allocating, see {@link #getFloat(int, int, int)}
+     */
+    public int getInt(int row, int col, int ch) {
+        int t = type();
+        if (CvType.depth(t) != CvType.CV_32S)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        checkChannel(t, ch);
+        if (intScratch == null || intScratch.length <= ch)
+            intScratch = new int[CvType.channels(t)];
+        if (nGetI(nativeObj, row, col, ch + 1, intScratch) == 0)
+            throw new IndexOutOfBoundsException("row " + row + ", col " + col + " is outside of " + this);
+        return intScratch[ch];
+    }
+
+    // javadoc:Mat::getInt(row,col)
+    public int getInt(int row, int col) {
+        return getInt(row, col, 0);
+    }
+
+    // javadoc:Mat::getByte(row,col,ch)
+    /**
+     * Reads one channel of a CV_8U or CV_8S element without allocating, see {@link #getFloat(int, int, int)}.
+     * The byte is signed, {@code & 0xFF} gives the CV_8U value.
+     */
+    public byte getByte(int row, int col, int ch) {
+        int t = type();
+        if (CvType.depth(t) != CvType.CV_8U && CvType.depth(t) != CvType.CV_8S)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        checkChannel(t, ch);
+        if (byteScratch == null || byteScratch.length <= ch)
+            byteScratch = new byte[CvType.channels(t)];
+        if (nGetB(nativeObj, row, col, ch + 1, byteScratch) == 0)
+            throw new IndexOutOfBoundsException("row " + row + ", col " + col + " is outside of " + this);
+        return byteScratch[ch];
+    }
+
+    // javadoc:Mat::getByte(row,col)
+    public byte getByte(int row, int col) {
+        return getByte(row, col, 0);
+    }
+
+    // javadoc:Mat::get(row,col,data,offset,length)
+    /**
+     * Copies length values starting at (row, col) into data from index offset, fewer if the Mat ends before.
+     * An offset other than 0 goes through a scratch array that is kept by the Mat, so it only allocates when a
+     * longer length than before is read.
+     *
+     * @return the number of bytes copied, like {@link #get(int, int, float[])}
+     */
+    public int get(int row, int col, float[] data, int offset, int length) {
+        int t = type();
+        checkRange(t, data == null ? 0 : data.length, offset, length);
+        if (CvType.depth(t) != CvType.CV_32F)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        if (offset == 0)
+            return nGetF(nativeObj, row, col, length, data);
+        if (floatCopyScratch == null || floatCopyScratch.length < length)
+            floatCopyScratch = new float[length];
+        int res = nGetF(nativeObj, row, col, length, floatCopyScratch);
+        System.arraycopy(floatCopyScratch, 0, data, offset, res / 4);
+        return res;
+    }
+
+    // javadoc:Mat::get(row,col,data,offset,length)
+    public int get(int row, int col, int[] data, int offset, int length) {
+        int t = type();
+        checkRange(t, data == null ? 0 : data.length, offset, length);
+        if (CvType.depth(t) != CvType.CV_32S)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        if (offset == 0)
+            return nGetI(nativeObj, row, col, length, data);
+        if (intCopyScratch == null || intCopyScratch.length < length)
+            intCopyScratch = new int[length];
+        int res = nGetI(nativeObj, row, col, length, intCopyScratch);
+        System.arraycopy(intCopyScratch, 0, data, offset, res / 4);
+        return res;
+    }
+
+    // javadoc:Mat::get(row,col,data,offset,length)
+    public int get(int row, int col, byte[] data, int offset, int length) {
+        int t = type();
+        checkRange(t, data == null ? 0 : data.length, offset, length);
+        if (CvType.depth(t) != CvType.CV_8U && CvType.depth(t) != CvType.CV_8S)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        if (offset == 0)
+            return nGetB(nativeObj, row, col, length, data);
+        if (byteCopyScratch == null || byteCopyScratch.length < length)
+            byteCopyScratch = new byte[length];
+        int res = nGetB(nativeObj, row, col, length, byteCopyScratch);
+        System.arraycopy(byteCopyScratch, 0, data, offset, res);
+        return res;
+    }
+
+    // javadoc:Mat::rowCursor()
+    /**
+     * A new {@link RowCursor} over this Mat, meant to be created once and reused for every pass
+     */
+    public RowCursor rowCursor() {
+        return new RowCursor(this);
+    }
+
+    /**
+     * A reusable view of one row of a 2D CV_8U, CV_8S, CV_32S or CV_32F Mat. {@link #moveTo(int)} copies the whole
+     * row into a Java array with one JNI call, after that the elements are plain array reads. The array is kept
+     * between rows and only grows when a row is longer than before, so walking a Mat allocates nothing.
+     * The type and size of the Mat are read again on every move, the Mat may be recreated in between.
+     * Not thread safe.
+     */
+    public static class RowCursor {
+
+        private final Mat mat;
+        private int row = -1;
+        private int depth;
+        private int channels;
+        private int length;
+        private float[] floats = new float[0];
+        private int[] ints = new int[0];
+        private byte[] bytes = new byte[0];
+
+        RowCursor(Mat mat) {
+            this.mat = mat;
+        }
+
+        /**
+         * Copy a row of the Mat into the cursor
+         *
+         * @return false if the row is outside of the Mat, the cursor is then left where it was
+         */
+        public boolean moveTo(int row) {
+            int rows = mat.rows();
+            if (row < 0 || row >= rows)
+                return false;
+            int t = mat.type();
+            int d = CvType.depth(t);
+            int cn = CvType.channels(t);
+            int len = mat.cols() * cn;
+            switch (d) {
+            case CvType.CV_32F:
+                if (floats.length < len)
+                    floats = new float[len];
+                nGetF(mat.nativeObj, row, 0, len, floats);
+                break;
+            case CvType.CV_32S:
+                if (ints.length < len)
+                    ints = new int[len];
+                nGetI(mat.nativeObj, row, 0, len, ints);
+                break;
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                if (bytes.length < len)
+                    bytes = new byte[len];
+                nGetB(mat.nativeObj, row, 0, len, bytes);
+                break;
+            default:
+                throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+            }
+            this.row = row;
+            depth = d;
+            channels = cn;
+            length = len;
+            return true;
+        }
+
+        /**
+         * Move to the next row, the first one after the cursor was created or {@link #reset()}
+         *
+         * @return false after the last row
+         */
+        public boolean next() {
+            return moveTo(row + 1);
+        }
+
+        /**
+         * Move before the first row again
+         */
+        public void reset() {
+            row = -1;
+        }
+
+        /**
+         * The current row, -1 before the first move
+         */
+        public int row() {
+            return row;
+        }
+
+        /**
+         * Number of values in the row, cols * channels
+         */
+        public int length() {
+            return length;
+        }
+
+        public float getFloat(int col, int ch) {
+            if (depth != CvType.CV_32F || row < 0)
+                throw new UnsupportedOperationException("The current row is not CV_32F");
+            return floats[index(col, ch)];
+        }
+
+        public int getInt(int col, int ch) {
+            if (depth != CvType.CV_32S || row < 0)
+                throw new UnsupportedOperationException("The current row is not CV_32S");
+            return ints[index(col, ch)];
+        }
+
+        public byte getByte(int col, int ch) {
+            if ((depth != CvType.CV_8U && depth != CvType.CV_8S) || row < 0)
+                throw new UnsupportedOperationException("The current row is not CV_8U or CV_8S");
+            return bytes[index(col, ch)];
+        }
+
+        /**
+         * The array the current CV_32F row was copied into, the first {@link #length()} values are the row.
+         * Overwritten by the next move.
+         */
+        public float[] floats() {
+            return floats;
+        }
+
+        /**
+         * The array the current CV_32S row was copied into, see {@link #floats()}
+         */
+        public int[] ints() {
+            return ints;
+        }
+
+        /**
+         * The array the current CV_8U or CV_8S row was copied into, see {@link #floats()}
+         */
+        public byte[] bytes() {
+            return bytes;
+        }
+
+        private int index(int col, int ch) {
+            if (col < 0 || ch < 0 || ch >= channels || col * channels + ch >= length)
+                throw new IndexOutOfBoundsException("col " + col + ", ch " + ch + " is outside of the row");
+            return col * channels + ch;
+        }
+    }
+
+    private static void checkChannel(int t, int ch) {
+        if (ch < 0 || ch >= CvType.channels(t))
+            throw new IndexOutOfBoundsException("Channel " + ch + " of a Mat with " + CvType.channels(t) + " channels");
+    }
+
+    private static void checkRange(int t, int dataLength, int offset, int length) {
+        if (length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Provided data element number (" + length +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ")");
+        if (offset < 0 || length < 0 || offset + length > dataLength)
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + " outside of an array of " + dataLength);
+    }
+
     // javadoc:Mat::height()
     public int height() {
         return rows();
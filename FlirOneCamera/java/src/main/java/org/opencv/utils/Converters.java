@@ -1,5 +1,7 @@
 package org.opencv.utils;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -303,6 +305,91 @@ public class Converters {
         }
     }
 
+    public static Mat vector_float_to_Mat(float[] fs) {
+        return vector_float_to_Mat(fs, (fs != null) ? fs.length : 0, new Mat());
+    }
+
+    /**
+     * Copies the first count values of fs into res without boxing them. res becomes a count x 1 CV_32FC1 Mat,
+     * its memory is only reallocated if it had another size or type, so a Mat reused for every call allocates nothing.
+     *
+     * @return res
+     */
+    public static Mat vector_float_to_Mat(float[] fs, int count, Mat res) {
+        if (count > 0) {
+            if (fs == null || fs.length < count)
+                throw new IllegalArgumentException("fs.length < count");
+            res.create(count, 1, CvType.CV_32FC1);
+            res.put(0, 0, fs, 0, count);
+        } else {
+            res.release();
+        }
+        return res;
+    }
+
+    /**
+     * Copies the remaining values of fs into res like {@link #vector_float_to_Mat(float[], int, Mat)}, the position
+     * of fs is not changed. Only a heap buffer starting at the beginning of its array is copied without a temporary array.
+     *
+     * @return res
+     */
+    public static Mat vector_float_to_Mat(FloatBuffer fs, Mat res) {
+        int count = fs.remaining();
+        if (fs.hasArray() && fs.arrayOffset() + fs.position() == 0)
+            return vector_float_to_Mat(fs.array(), count, res);
+
+        float[] buff = new float[count];
+        int position = fs.position();
+        fs.get(buff);
+        fs.position(position);
+        return vector_float_to_Mat(buff, count, res);
+    }
+
+    public static float[] Mat_to_vector_float(Mat m) {
+        float[] fs = new float[m.empty() ? 0 : m.rows()];
+        Mat_to_vector_float(m, fs);
+        return fs;
+    }
+
+    /**
+     * Copies the values of a CV_32FC1 column Mat into the beginning of fs without boxing them
+     *
+     * @return the number of values, m.rows()
+     */
+    public static int Mat_to_vector_float(Mat m, float[] fs) {
+        if (fs == null)
+            throw new IllegalArgumentException("fs == null");
+        if (m.empty())
+            return 0;
+        int count = m.rows();
+        if (CvType.CV_32FC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32FC1 != m.type() ||  m.cols()!=1\n" + m);
+        if (fs.length < count)
+            throw new IllegalArgumentException("fs.length < m.rows()");
+
+        m.get(0, 0, fs, 0, count);
+        return count;
+    }
+
+    /**
+     * Puts the values of a CV_32FC1 column Mat at the position of fs and advances it, like {@code FloatBuffer.put}
+     *
+     * @return the number of values, m.rows()
+     */
+    public static int Mat_to_vector_float(Mat m, FloatBuffer fs) {
+        int count = m.empty() ? 0 : m.rows();
+        if (fs.remaining() < count)
+            throw new IllegalArgumentException("fs.remaining() < m.rows()");
+        if (fs.hasArray() && fs.arrayOffset() + fs.position() == 0) {
+            Mat_to_vector_float(m, fs.array());
+            fs.position(count);
+        } else {
+            fs.put(Mat_to_vector_float(m));
+        }
+        return count;
+    }
+
     public static Mat vector_uchar_to_Mat(List<Byte> bs) {
         Mat res;
         int count = (bs != null) ? bs.size() : 0;
@@ -386,6 +473,91 @@ public class Converters {
         }
     }
 
+    public static Mat vector_int_to_Mat(int[] is) {
+        return vector_int_to_Mat(is, (is != null) ? is.length : 0, new Mat());
+    }
+
+    /**
+     * Copies the first count values of is into res without boxing them. res becomes a count x 1 CV_32SC1 Mat,
+     * its memory is only reallocated if it had another size or type, so a Mat reused for every call allocates nothing.
+     *
+     * @return res
+     */
+    public static Mat vector_int_to_Mat(int[] is, int count, Mat res) {
+        if (count > 0) {
+            if (is == null || is.length < count)
+                throw new IllegalArgumentException("is.length < count");
+            res.create(count, 1, CvType.CV_32SC1);
+            res.put(0, 0, is, 0, count);
+        } else {
+            res.release();
+        }
+        return res;
+    }
+
+    /**
+     * Copies the remaining values of is into res like {@link #vector_int_to_Mat(int[], int, Mat)}, the position
+     * of is is not changed. Only a heap buffer starting at the beginning of its array is copied without a temporary array.
+     *
+     * @return res
+     */
+    public static Mat vector_int_to_Mat(IntBuffer is, Mat res) {
+        int count = is.remaining();
+        if (is.hasArray() && is.arrayOffset() + is.position() == 0)
+            return vector_int_to_Mat(is.array(), count, res);
+
+        int[] buff = new int[count];
+        int position = is.position();
+        is.get(buff);
+        is.position(position);
+        return vector_int_to_Mat(buff, count, res);
+    }
+
+    public static int[] Mat_to_vector_int(Mat m) {
+        int[] is = new int[m.empty() ? 0 : m.rows()];
+        Mat_to_vector_int(m, is);
+        return is;
+    }
+
+    /**
+     * Copies the values of a CV_32SC1 column Mat into the beginning of is without boxing them
+     *
+     * @return the number of values, m.rows()
+     */
+    public static int Mat_to_vector_int(Mat m, int[] is) {
+        if (is == null)
+            throw new IllegalArgumentException("is == null");
+        if (m.empty())
+            return 0;
+        int count = m.rows();
+        if (CvType.CV_32SC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32SC1 != m.type() ||  m.cols()!=1\n" + m);
+        if (is.length < count)
+            throw new IllegalArgumentException("is.length < m.rows()");
+
+        m.get(0, 0, is, 0, count);
+        return count;
+    }
+
+    /**
+     * Puts the values of a CV_32SC1 column Mat at the position of is and advances it, like {@code IntBuffer.put}
+     *
+     * @return the number of values, m.rows()
+     */
+    public static int Mat_to_vector_int(Mat m, IntBuffer is) {
+        int count = m.empty() ? 0 : m.rows();
+        if (is.remaining() < count)
+            throw new IllegalArgumentException("is.remaining() < m.rows()");
+        if (is.hasArray() && is.arrayOffset() + is.position() == 0) {
+            Mat_to_vector_int(m, is.array());
+            is.position(count);
+        } else {
+            is.put(Mat_to_vector_int(m));
+        }
+        return count;
+    }
+
     public static void Mat_to_vector_char(Mat m, List<Byte> bs) {
         if (bs == null)
             throw new IllegalArgumentException("Output List can't be null");
@@ -438,6 +610,56 @@ public class Converters {
         }
     }
 
+    public static Mat vector_Rect_to_Mat(int[] rs) {
+        return vector_Rect_to_Mat(rs, (rs != null) ? rs.length / 4 : 0, new Mat());
+    }
+
+    /**
+     * Copies the first count rectangles of rs, stored as x, y, width, height quadruples, into res without creating
+     * Rect objects. res becomes a count x 1 CV_32SC4 Mat like a MatOfRect, its memory is only reallocated if it had
+     * another size or type.
+     *
+     * @return res
+     */
+    public static Mat vector_Rect_to_Mat(int[] rs, int count, Mat res) {
+        if (count > 0) {
+            if (rs == null || rs.length < 4 * count)
+                throw new IllegalArgumentException("rs.length < 4 * count");
+            res.create(count, 1, CvType.CV_32SC4);
+            res.put(0, 0, rs, 0, 4 * count);
+        } else {
+            res.release();
+        }
+        return res;
+    }
+
+    public static int[] Mat_to_vector_Rect(Mat m) {
+        int[] rs = new int[m.empty() ? 0 : 4 * m.rows()];
+        Mat_to_vector_Rect(m, rs);
+        return rs;
+    }
+
+    /**
+     * Copies the rectangles of a CV_32SC4 column Mat into the beginning of rs as x, y, width, height quadruples.
+     *
+     * @return the number of rectangles, m.rows()
+     */
+    public static int Mat_to_vector_Rect(Mat m, int[] rs) {
+        if (rs == null)
+            throw new IllegalArgumentException("rs == null");
+        if (m.empty())
+            return 0;
+        int count = m.rows();
+        if (CvType.CV_32SC4 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32SC4 != m.type() ||  m.cols()!=1\n" + m);
+        if (rs.length < 4 * count)
+            throw new IllegalArgumentException("rs.length < 4 * m.rows()");
+
+        m.get(0, 0, rs, 0, 4 * count);
+        return count;
+    }
+
     public static Mat vector_Rect2d_to_Mat(List<Rect2d> rs) {
         Mat res;
         int count = (rs != null) ? rs.size() : 0;
@@ -0,0 +1,210 @@
+package org.opencv.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The offset get/put overloads, the single element accessors and the {@link Mat.RowCursor} against the whole array
+ * {@code get} and {@code put}. Needs the desktop build of the OpenCV native library, its directory is passed to
+ * gradle with {@code -PopencvLibraryPath=...}.
+ */
+public class MatTest {
+
+    private static final float UNTOUCHED = -1f;
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    private static Mat floats(int rows, int cols) {
+        Mat m = new Mat(rows, cols, CvType.CV_32FC1);
+        float[] values = new float[rows * cols];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 0.5f;
+        }
+        m.put(0, 0, values);
+        return m;
+    }
+
+    private static float[] all(Mat m) {
+        float[] values = new float[(int) (m.total() * m.channels())];
+        m.get(0, 0, values);
+        return values;
+    }
+
+    private static float[] filled(int length) {
+        float[] values = new float[length];
+        Arrays.fill(values, UNTOUCHED);
+        return values;
+    }
+
+    @Test
+    public void offsetGetMatchesGet() {
+        Mat m = floats(4, 5);
+        float[] expected = all(m);
+        for (int offset : new int[]{0, 3}) {
+            float[] data = filled(12);
+            assertEquals(6 * 4, m.get(1, 2, data, offset, 6));
+            float[] copied = new float[6];
+            assertEquals(6 * 4, m.get(1, 2, copied));
+            assertArrayEquals(copied, Arrays.copyOfRange(data, offset, offset + 6), 0);
+            assertArrayEquals(Arrays.copyOfRange(expected, 7, 13), copied, 0);
+            for (int i = 0; i < data.length; i++) {
+                if (i < offset || i >= offset + 6) {
+                    assertEquals("data[" + i + "]", UNTOUCHED, data[i], 0);
+                }
+            }
+        }
+        m.release();
+    }
+
+    @Test
+    public void offsetPutMatchesPut() {
+        float[] source = {9f, 9f, 9f, 1f, 2f, 3f, 4f, 5f, 9f};
+        Mat withOffset = floats(3, 4);
+        Mat withCopy = floats(3, 4);
+        assertEquals(5 * 4, withOffset.put(1, 3, source, 3, 5));
+        assertEquals(5 * 4, withCopy.put(1, 3, Arrays.copyOfRange(source, 3, 8)));
+        assertArrayEquals(all(withCopy), all(withOffset), 0);
+        assertEquals(1f, withOffset.getFloat(1, 3), 0);
+        assertEquals(5f, withOffset.getFloat(2, 3), 0);
+        withOffset.release();
+        withCopy.release();
+    }
+
+    @Test
+    public void offsetIntsAndBytesMatchGet() {
+        Mat ints = new Mat(2, 3, CvType.CV_32SC2);
+        int[] values = {1, -2, 3, -4, 5, -6, 7, -8, 9, -10, 11, -12};
+        ints.put(0, 0, values);
+        int[] data = new int[8];
+        assertEquals(4 * 4, ints.get(0, 2, data, 4, 4));
+        assertArrayEquals(new int[]{0, 0, 0, 0, 5, -6, 7, -8}, data);
+        assertEquals(2 * 4, ints.put(1, 1, new int[]{0, 100, 200}, 1, 2));
+        assertEquals(100, ints.getInt(1, 1, 0));
+        assertEquals(200, ints.getInt(1, 1, 1));
+
+        Mat bytes = new Mat(2, 2, CvType.CV_8UC3);
+        byte[] pixels = new byte[12];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i * 20);
+        }
+        bytes.put(0, 0, pixels);
+        byte[] out = new byte[7];
+        assertEquals(6, bytes.get(0, 1, out, 1, 6));
+        assertArrayEquals(Arrays.copyOfRange(pixels, 3, 9), Arrays.copyOfRange(out, 1, 7));
+        assertEquals((byte) 220, bytes.getByte(1, 1, 2));
+        ints.release();
+        bytes.release();
+    }
+
+    @Test
+    public void copyAtTheEndReturnsFewerBytes() {
+        Mat m = floats(3, 4);
+        float[] data = filled(10);
+        // (2, 1) is three values before the end
+        assertEquals(3 * 4, m.get(2, 1, data, 2, 8));
+        assertEquals(3 * 4, m.get(2, 1, new float[8]));
+        assertArrayEquals(new float[]{UNTOUCHED, UNTOUCHED, 4.5f, 5f, 5.5f, UNTOUCHED, UNTOUCHED, UNTOUCHED, UNTOUCHED,
+                UNTOUCHED}, data, 0);
+
+        assertEquals(2 * 4, m.put(2, 2, new float[]{9f, 7f, 8f, 9f, 9f, 9f}, 1, 5));
+        assertArrayEquals(new float[]{4.5f, 7f, 8f}, Arrays.copyOfRange(all(m), 9, 12), 0);
+        m.release();
+    }
+
+    @Test
+    public void rangesOutsideTheArrayAreRejected() {
+        Mat m = floats(2, 2);
+        try {
+            m.get(0, 0, new float[4], 2, 3);
+            fail("offset + length beyond the array");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            m.put(0, 0, new float[4], -1, 2);
+            fail("negative offset");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            new Mat(1, 2, CvType.CV_32SC2).get(0, 0, new int[4], 1, 3);
+            fail("length that isn't a multiple of the channels");
+        } catch (UnsupportedOperationException expected) {
+        }
+        m.release();
+    }
+
+    @Test
+    public void elementReadsSurviveLongCopies() {
+        Mat m = new Mat(1, 8, CvType.CV_32FC3);
+        float[] values = new float[24];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        m.put(0, 0, values);
+        assertEquals(5f, m.getFloat(0, 1, 2), 0);
+        float[] data = new float[25];
+        m.get(0, 0, data, 1, 24);
+        assertArrayEquals(values, Arrays.copyOfRange(data, 1, 25), 0);
+        assertEquals(22f, m.getFloat(0, 7, 1), 0);
+        assertEquals(0f, m.getFloat(0, 0), 0);
+        m.release();
+    }
+
+    @Test
+    public void rowCursorFollowsARecreatedMat() {
+        Mat m = floats(3, 4);
+        Mat.RowCursor cursor = m.rowCursor();
+        assertTrue(cursor.next());
+        assertEquals(4, cursor.length());
+        assertEquals(1.5f, cursor.getFloat(3, 0), 0);
+
+        // Fewer rows, other type and size
+        m.create(2, 3, CvType.CV_8UC3);
+        byte[] pixels = new byte[18];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i + 100);
+        }
+        m.put(0, 0, pixels);
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.row());
+        assertEquals(9, cursor.length());
+        assertEquals((byte) 117, cursor.getByte(2, 2));
+        assertFalse(cursor.next());
+        assertEquals("a failed move leaves the cursor where it was", 1, cursor.row());
+        try {
+            cursor.getFloat(0, 0);
+            fail("the row isn't CV_32F anymore");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            cursor.getByte(3, 0);
+            fail("column outside of the row");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+
+        // More rows than before
+        m.release();
+        m.create(5, 1, CvType.CV_32SC1);
+        m.put(0, 0, new int[]{10, 20, 30, 40, 50});
+        cursor.reset();
+        int rows = 0;
+        int sum = 0;
+        while (cursor.next()) {
+            rows++;
+            sum += cursor.getInt(0, 0);
+        }
+        assertEquals(5, rows);
+        assertEquals(150, sum);
+        m.release();
+    }
+}
@@ -0,0 +1,208 @@
+package org.opencv.utils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The primitive array and buffer overloads of {@link Converters} against the values they were given and against the
+ * List based conversions. Needs the desktop build of the OpenCV native library, its directory is passed to gradle
+ * with {@code -PopencvLibraryPath=...}.
+ */
+public class ConvertersTest {
+
+    private static final float[] FLOATS = {0f, -0f, 1.5f, -2.25f, Float.MIN_VALUE, Float.MAX_VALUE, Float.NaN, 1e-20f};
+    private static final int[] INTS = {0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE, 42, 1 << 20};
+    private static final int[] RECTS = {0, 0, 100, 100, -5, 7, 0, 0, 1079, 1439, 1, 1};
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @Test
+    public void floatArrayRoundTrip() {
+        Mat m = Converters.vector_float_to_Mat(FLOATS);
+        assertEquals(CvType.CV_32FC1, m.type());
+        assertEquals(FLOATS.length, m.rows());
+        assertEquals(1, m.cols());
+        assertArrayEquals(FLOATS, Converters.Mat_to_vector_float(m), 0);
+
+        float[] longer = new float[FLOATS.length + 3];
+        assertEquals(FLOATS.length, Converters.Mat_to_vector_float(m, longer));
+        assertArrayEquals(FLOATS, Arrays.copyOf(longer, FLOATS.length), 0);
+
+        List<Float> list = new ArrayList<>();
+        Converters.Mat_to_vector_float(m, list);
+        assertEquals(FLOATS.length, list.size());
+        for (int i = 0; i < FLOATS.length; i++) {
+            assertEquals(FLOATS[i], list.get(i), 0);
+        }
+        m.release();
+    }
+
+    @Test
+    public void intArrayRoundTrip() {
+        Mat m = Converters.vector_int_to_Mat(INTS);
+        assertEquals(CvType.CV_32SC1, m.type());
+        assertEquals(INTS.length, m.rows());
+        assertArrayEquals(INTS, Converters.Mat_to_vector_int(m));
+
+        List<Integer> list = new ArrayList<>();
+        Converters.Mat_to_vector_int(m, list);
+        for (int i = 0; i < INTS.length; i++) {
+            assertEquals(INTS[i], (int) list.get(i));
+        }
+        m.release();
+    }
+
+    @Test
+    public void reusedMatKeepsItsMemory() {
+        Mat res = new Mat();
+        Converters.vector_float_to_Mat(FLOATS, FLOATS.length, res);
+        long data = res.dataAddr();
+        float[] other = new float[FLOATS.length];
+        Arrays.fill(other, 3f);
+        assertSame(res, Converters.vector_float_to_Mat(other, other.length, res));
+        assertEquals(data, res.dataAddr());
+        assertArrayEquals(other, Converters.Mat_to_vector_float(res), 0);
+
+        // Only the first count values are copied
+        Converters.vector_float_to_Mat(FLOATS, 3, res);
+        assertArrayEquals(Arrays.copyOf(FLOATS, 3), Converters.Mat_to_vector_float(res), 0);
+        res.release();
+    }
+
+    @Test
+    public void rectQuadruplesRoundTrip() {
+        Mat m = Converters.vector_Rect_to_Mat(RECTS);
+        assertEquals(CvType.CV_32SC4, m.type());
+        assertEquals(RECTS.length / 4, m.rows());
+        assertArrayEquals(RECTS, Converters.Mat_to_vector_Rect(m));
+
+        List<Rect> rects = new ArrayList<>();
+        Converters.Mat_to_vector_Rect(m, rects);
+        assertEquals(Arrays.asList(new Rect(0, 0, 100, 100), new Rect(-5, 7, 0, 0), new Rect(1079, 1439, 1, 1)), rects);
+        assertArrayEquals(rects.toArray(), new MatOfRect(m).toArray());
+
+        Mat fromList = Converters.vector_Rect_to_Mat(rects);
+        assertArrayEquals(RECTS, Converters.Mat_to_vector_Rect(fromList));
+        fromList.release();
+        m.release();
+    }
+
+    @Test
+    public void buffersAreReadFromTheirPosition() {
+        float[] backing = new float[FLOATS.length + 5];
+        System.arraycopy(FLOATS, 0, backing, 5, FLOATS.length);
+        FloatBuffer positioned = FloatBuffer.wrap(backing);
+        positioned.position(5);
+        FloatBuffer sliced = ((FloatBuffer) FloatBuffer.wrap(backing).position(5)).slice();
+        FloatBuffer direct = ByteBuffer.allocateDirect(4 * FLOATS.length).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        direct.put(FLOATS).flip();
+        assertEquals(5, sliced.arrayOffset());
+
+        Mat res = new Mat();
+        for (FloatBuffer buffer : new FloatBuffer[]{positioned, sliced, direct, FloatBuffer.wrap(FLOATS)}) {
+            int position = buffer.position();
+            Converters.vector_float_to_Mat(buffer, res);
+            assertArrayEquals(FLOATS, Converters.Mat_to_vector_float(res), 0);
+            assertEquals("position of the buffer", position, buffer.position());
+        }
+
+        int[] intBacking = new int[INTS.length + 3];
+        System.arraycopy(INTS, 0, intBacking, 3, INTS.length);
+        IntBuffer intPositioned = IntBuffer.wrap(intBacking);
+        intPositioned.position(3);
+        IntBuffer intSliced = ((IntBuffer) IntBuffer.wrap(intBacking).position(3)).slice();
+        for (IntBuffer buffer : new IntBuffer[]{intPositioned, intSliced, IntBuffer.wrap(INTS)}) {
+            int position = buffer.position();
+            Converters.vector_int_to_Mat(buffer, res);
+            assertArrayEquals(INTS, Converters.Mat_to_vector_int(res));
+            assertEquals("position of the buffer", position, buffer.position());
+        }
+        res.release();
+    }
+
+    @Test
+    public void buffersAreWrittenAtTheirPosition() {
+        Mat floats = Converters.vector_float_to_Mat(FLOATS);
+        float[] backing = new float[FLOATS.length + 4];
+        FloatBuffer positioned = FloatBuffer.wrap(backing);
+        positioned.position(4);
+        assertEquals(FLOATS.length, Converters.Mat_to_vector_float(floats, positioned));
+        assertEquals(backing.length, positioned.position());
+        assertArrayEquals(FLOATS, Arrays.copyOfRange(backing, 4, backing.length), 0);
+
+        float[] sliceBacking = new float[FLOATS.length + 2];
+        FloatBuffer sliced = ((FloatBuffer) FloatBuffer.wrap(sliceBacking).position(2)).slice();
+        Converters.Mat_to_vector_float(floats, sliced);
+        assertEquals(FLOATS.length, sliced.position());
+        assertArrayEquals(FLOATS, Arrays.copyOfRange(sliceBacking, 2, sliceBacking.length), 0);
+
+        FloatBuffer atStart = FloatBuffer.allocate(FLOATS.length);
+        Converters.Mat_to_vector_float(floats, atStart);
+        assertEquals(FLOATS.length, atStart.position());
+        assertArrayEquals(FLOATS, atStart.array(), 0);
+
+        Mat ints = Converters.vector_int_to_Mat(INTS);
+        int[] intBacking = new int[INTS.length + 1];
+        IntBuffer intPositioned = IntBuffer.wrap(intBacking);
+        intPositioned.position(1);
+        assertEquals(INTS.length, Converters.Mat_to_vector_int(ints, intPositioned));
+        assertEquals(intBacking.length, intPositioned.position());
+        assertArrayEquals(INTS, Arrays.copyOfRange(intBacking, 1, intBacking.length));
+        floats.release();
+        ints.release();
+    }
+
+    @Test
+    public void countZeroReleasesTheMat() {
+        Mat res = Converters.vector_float_to_Mat(FLOATS);
+        assertSame(res, Converters.vector_float_to_Mat(FLOATS, 0, res));
+        assertTrue(res.empty());
+        assertEquals(0, Converters.Mat_to_vector_float(res).length);
+
+        Converters.vector_int_to_Mat(INTS, INTS.length, res);
+        Converters.vector_int_to_Mat(null, 0, res);
+        assertTrue(res.empty());
+        assertEquals(0, Converters.Mat_to_vector_int(res, new int[0]));
+
+        Converters.vector_Rect_to_Mat(RECTS, RECTS.length / 4, res);
+        Converters.vector_Rect_to_Mat(RECTS, 0, res);
+        assertTrue(res.empty());
+        assertEquals(0, Converters.Mat_to_vector_Rect(res).length);
+
+        Converters.vector_float_to_Mat(FLOATS, FLOATS.length, res);
+        Converters.vector_float_to_Mat(FloatBuffer.allocate(0), res);
+        assertTrue(res.empty());
+        assertEquals(0, Converters.Mat_to_vector_float(res, FloatBuffer.allocate(0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void countBeyondTheArrayIsRejected() {
+        Converters.vector_Rect_to_Mat(RECTS, RECTS.length / 4 + 1, new Mat());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallBufferIsRejected() {
+        Converters.Mat_to_vector_int(Converters.vector_int_to_Mat(INTS), IntBuffer.allocate(INTS.length - 1));
+    }
+}